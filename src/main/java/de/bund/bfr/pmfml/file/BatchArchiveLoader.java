@@ -0,0 +1,359 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loads many PMF and PMFX files concurrently.
+ * <p>
+ * Every file is probed for its {@link ModelType} with {@link PMFArchive#probe(Path)} and then read with the matching
+ * view of {@link PMFArchive}. Files are loaded on a work stealing {@link ForkJoinPool} with a fixed parallelism and
+ * the results are streamed in the order they complete. Only a few files are in flight at a time, so results do not
+ * pile up if the consumer is slower than the loader. A file that cannot be read yields a failed {@link Result}; the
+ * rest of the batch goes on.
+ * <pre>
+ * try (BatchArchiveLoader loader = new BatchArchiveLoader(8)) {
+ *     loader.load(directory).filter(Result::isSuccessful).forEach(result -&gt; ...);
+ *     System.out.println(loader.getStatistics());
+ * }
+ * </pre>
+ */
+public class BatchArchiveLoader implements AutoCloseable {
+
+    /**
+     * Glob matching PMF and PMFX files.
+     */
+    public static final String DEFAULT_GLOB = "*.{pmf,pmfx}";
+
+    private static final Logger LOGGER = Logger.getLogger("BatchArchiveLoader");
+
+    // Files in flight per worker thread
+    private static final int FILES_PER_THREAD = 2;
+
+    private final ForkJoinPool pool;
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * Creates a loader with a thread per processor.
+     */
+    public BatchArchiveLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism number of files loaded at the same time
+     */
+    public BatchArchiveLoader(final int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Finds the files in a directory matching a glob, e.g. {@link #DEFAULT_GLOB}. Subdirectories are not searched.
+     *
+     * @return matching files sorted by name
+     */
+    public static List<Path> find(final Path directory, final String glob) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (final Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Loads the PMF and PMFX files in a directory.
+     */
+    public Stream<Result> load(final Path directory) throws IOException {
+        return load(directory, DEFAULT_GLOB);
+    }
+
+    /**
+     * Loads the files in a directory matching a glob.
+     */
+    public Stream<Result> load(final Path directory, final String glob) throws IOException {
+        return load(find(directory, glob));
+    }
+
+    /**
+     * Loads files lazily: they are submitted as the stream is consumed, and the results come in the order the files
+     * complete.
+     */
+    public Stream<Result> load(final Collection<Path> files) {
+        statistics.start();
+
+        final Iterator<Path> pending = new ArrayList<>(files).iterator();
+        final CompletionService<Result> service = new ExecutorCompletionService<>(pool);
+        final int window = pool.getParallelism() * FILES_PER_THREAD;
+
+        final Iterator<Result> results = new Iterator<Result>() {
+
+            private int inFlight;
+
+            {
+                while (inFlight < window && submitNext()) {
+                    // Fills the window
+                }
+            }
+
+            private boolean submitNext() {
+                if (!pending.hasNext()) {
+                    return false;
+                }
+                final Path file = pending.next();
+                service.submit(() -> loadFile(file));
+                inFlight++;
+                return true;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return inFlight > 0;
+            }
+
+            @Override
+            public Result next() {
+                if (inFlight == 0) {
+                    throw new NoSuchElementException();
+                }
+
+                final Result result;
+                try {
+                    result = service.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while loading archives");
+                } catch (ExecutionException e) {
+                    // loadFile catches every exception, so only errors get here
+                    throw (Error) e.getCause();
+                }
+                inFlight--;
+                submitNext();
+                return result;
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliterator(results, files.size(), Spliterator.NONNULL), false);
+    }
+
+    private Result loadFile(final Path file) {
+        final long start = System.nanoTime();
+        try {
+            final ModelType modelType = PMFArchive.probe(file).getModelType();
+            if (modelType == null) {
+                throw new CombineArchiveException(file.getFileName() + " has no model type");
+            }
+
+            final List<?> models;
+            try (PMFArchive archive = PMFArchive.open(file)) {
+                // Files are already loaded in parallel, so each one is parsed in its thread
+                models = archive.load(Runnable::run).getModels(modelType);
+            }
+
+            statistics.addFile(Files.size(file), models.size(), System.nanoTime() - start);
+            return new Result(file, modelType, models, null);
+        } catch (Exception e) {
+            LOGGER.warning(file.getFileName() + " could not be loaded: " + e);
+            statistics.addFailure(System.nanoTime() - start);
+            return new Result(file, null, Collections.emptyList(), e);
+        }
+    }
+
+    /**
+     * @return statistics of every file loaded so far by this loader
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Shuts down the worker threads. Files already submitted are still loaded.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Models of a file, or the exception that stopped its loading.
+     */
+    public static class Result {
+
+        private final Path path;
+        private final ModelType modelType;
+        private final List<?> models;
+        private final Exception error;
+
+        Result(final Path path, final ModelType modelType, final List<?> models, final Exception error) {
+            this.path = path;
+            this.modelType = modelType;
+            this.models = models;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return model type of the file or null if it could not be loaded
+         */
+        public ModelType getModelType() {
+            return modelType;
+        }
+
+        /**
+         * @return models of the file, of the class matching its model type, e.g.
+         * {@link de.bund.bfr.pmfml.model.TwoStepTertiaryModel}. Empty if the file could not be loaded.
+         */
+        public List<?> getModels() {
+            return models;
+        }
+
+        /**
+         * @return exception that stopped the loading or null if the file was loaded
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "Result [path=" + path + ", modelType=" + modelType + ", models=" + models.size() + ", error="
+                    + error + "]";
+        }
+    }
+
+    /**
+     * Throughput of a loader. Updated concurrently while files are loaded.
+     */
+    public static class Statistics {
+
+        private final LongAdder files = new LongAdder();
+        private final LongAdder failedFiles = new LongAdder();
+        private final LongAdder models = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        private final AtomicLong startNanos = new AtomicLong();
+        private final AtomicLong endNanos = new AtomicLong();
+
+        void start() {
+            startNanos.compareAndSet(0, System.nanoTime());
+        }
+
+        void addFile(final long size, final int numModels, final long nanos) {
+            files.increment();
+            models.add(numModels);
+            bytes.add(size);
+            busyNanos.add(nanos);
+            endNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        void addFailure(final long nanos) {
+            files.increment();
+            failedFiles.increment();
+            busyNanos.add(nanos);
+            endNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        /**
+         * @return number of files loaded, including the failed ones
+         */
+        public long getNumFiles() {
+            return files.sum();
+        }
+
+        public long getNumFailedFiles() {
+            return failedFiles.sum();
+        }
+
+        public long getNumModels() {
+            return models.sum();
+        }
+
+        /**
+         * @return total size of the files loaded successfully
+         */
+        public long getNumBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return wall time from the first load until the last file completed, in nanoseconds
+         */
+        public long getElapsedNanos() {
+            final long start = startNanos.get();
+            final long end = endNanos.get();
+            return start == 0 || end < start ? 0 : end - start;
+        }
+
+        /**
+         * @return time spent by all the threads loading files, in nanoseconds
+         */
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        public double getFilesPerSecond() {
+            return perSecond(getNumFiles());
+        }
+
+        public double getBytesPerSecond() {
+            return perSecond(getNumBytes());
+        }
+
+        private double perSecond(final long count) {
+            final long elapsed = getElapsedNanos();
+            return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Statistics [files=%d, failedFiles=%d, models=%d, bytes=%d, "
+                            + "elapsed=%.3fs, files/s=%.1f, MB/s=%.2f]",
+                    getNumFiles(), getNumFailedFiles(), getNumModels(), getNumBytes(), getElapsedNanos() / 1e9,
+                    getFilesPerSecond(), getBytesPerSecond() / (1024 * 1024));
+        }
+    }
+}
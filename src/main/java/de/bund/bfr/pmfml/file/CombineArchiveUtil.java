@@ -19,10 +19,10 @@ package de.bund.bfr.pmfml.file;
 import de.bund.bfr.pmfml.numl.NuMLDocument;
 import de.bund.bfr.pmfml.numl.NuMLReader;
 import de.bund.bfr.pmfml.numl.NuMLWriter;
+import de.bund.bfr.pmfml.sbml.DataSourceNode;
 import de.unirostock.sems.cbarchive.ArchiveEntry;
 import de.unirostock.sems.cbarchive.CombineArchive;
 import de.unirostock.sems.cbarchive.CombineArchiveException;
-import org.apache.commons.io.FileUtils;
 import org.sbml.jsbml.SBMLDocument;
 import org.sbml.jsbml.SBMLException;
 import org.sbml.jsbml.SBMLReader;
@@ -30,22 +30,40 @@ import org.sbml.jsbml.SBMLWriter;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CombineArchiveUtil {
 
-    private static final SBMLReader READER = new SBMLReader();
-    private static final SBMLWriter WRITER = new SBMLWriter();
+    // Entries may be read and written concurrently, so each thread gets its own reader and writer
+    private static final ThreadLocal<SBMLReader> READER = ThreadLocal.withInitial(SBMLReader::new);
+    private static final ThreadLocal<SBMLWriter> WRITER = ThreadLocal.withInitial(SBMLWriter::new);
+
+    // Not namespace aware: the data source annotations use the undeclared prefix "pmmlab"
+    private static final XMLInputFactory SCAN_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        SCAN_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        SCAN_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    private static File emptyFile;
 
     private CombineArchiveUtil() {
     }
@@ -93,33 +111,153 @@ public class CombineArchiveUtil {
     // New functions --- old ones should be deleted
     static NuMLDocument readData(Path path) throws IOException, ParserConfigurationException, SAXException {
         try (InputStream is = Files.newInputStream(path, StandardOpenOption.READ)) {
-            return NuMLReader.read(is);
+            return readData(is);
+        }
+    }
+
+    static NuMLDocument readData(InputStream is) throws IOException, ParserConfigurationException, SAXException {
+        try {
+            return NuMLReader.readStreaming(is);
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
         }
     }
 
     static ArchiveEntry writeData(CombineArchive archive, NuMLDocument doc, String docName)
             throws IOException, TransformerFactoryConfigurationError, TransformerException, ParserConfigurationException {
 
-        File tmpFile = File.createTempFile("tmp", ".numl");
-        tmpFile.deleteOnExit();
-        NuMLWriter.write(doc, tmpFile);
-        return archive.addEntry(tmpFile, docName, URIS.numl);
+        ArchiveEntry entry = addEmptyEntry(archive, docName, URIS.numl);
+        try (OutputStream os = Files.newOutputStream(entry.getPath())) {
+            NuMLWriter.writeStreaming(doc, os, true);
+        } catch (IOException | ParserConfigurationException e) {
+            archive.removeEntry(entry);
+            throw e;
+        } catch (XMLStreamException e) {
+            archive.removeEntry(entry);
+            throw new IOException(e);
+        }
+        return entry;
+    }
+
+    /**
+     * Parses the document of an archive entry.
+     */
+    @FunctionalInterface
+    interface EntryReader<T> {
+        T read(Path path) throws Exception;
     }
 
     static SBMLDocument readModel(Path path) throws IOException, XMLStreamException {
         try (InputStream stream = Files.newInputStream(path, StandardOpenOption.READ)) {
-            return READER.readSBMLFromStream(stream);
+            return readModel(stream);
         }
     }
 
+    static SBMLDocument readModel(InputStream stream) throws XMLStreamException {
+        return READER.get().readSBMLFromStream(stream);
+    }
+
+    /**
+     * Scans a SBML document for the data source annotations, without parsing it with JSBML.
+     *
+     * @return names of the NuML documents in the data source annotations, in document order
+     */
+    static List<String> readDataSources(Path path) throws IOException, XMLStreamException {
+        List<String> dataDocNames = new ArrayList<>();
+        try (InputStream stream = Files.newInputStream(path, StandardOpenOption.READ)) {
+            XMLStreamReader reader = SCAN_FACTORY.createXMLStreamReader(stream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && DataSourceNode.TAG.equals(getLocalName(reader.getLocalName()))) {
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            if ("href".equals(getLocalName(reader.getAttributeLocalName(i)))) {
+                                dataDocNames.add(reader.getAttributeValue(i));
+                            }
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return dataDocNames;
+    }
+
+    /**
+     * @return name without prefix. The scanner is not namespace aware, so names may keep their prefixes.
+     */
+    private static String getLocalName(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+
     static ArchiveEntry writeModel(CombineArchive archive, SBMLDocument doc, String docName, URI modelUri)
             throws IOException, SBMLException, XMLStreamException {
-        // Creates temporary file for the model
-        final File tmpFile = File.createTempFile("tmp", ".sbml");
-        tmpFile.deleteOnExit();
-        // Writes model to tmpFile and adds it to the file
-        WRITER.write(doc, tmpFile);
-        return archive.addEntry(tmpFile, docName, modelUri);
+        // Writes the model straight into its entry in the archive
+        ArchiveEntry entry = addEmptyEntry(archive, docName, modelUri);
+        try (OutputStream os = Files.newOutputStream(entry.getPath())) {
+            WRITER.get().write(doc, os);
+        } catch (IOException | SBMLException | XMLStreamException e) {
+            archive.removeEntry(entry);
+            throw e;
+        }
+        return entry;
+    }
+
+    /**
+     * Serializes a NuML document into a byte array.
+     */
+    static byte[] serializeData(NuMLDocument doc) throws IOException, ParserConfigurationException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try {
+            NuMLWriter.writeStreaming(doc, os, true);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Serializes a SBML document into a byte array.
+     */
+    static byte[] serializeModel(SBMLDocument doc) throws SBMLException, XMLStreamException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        WRITER.get().write(doc, os);
+        return os.toByteArray();
+    }
+
+    /**
+     * Adds an entry with already serialized content to a CombineArchive.
+     */
+    static ArchiveEntry writeEntry(CombineArchive archive, byte[] content, String docName, URI format)
+            throws IOException {
+        ArchiveEntry entry = addEmptyEntry(archive, docName, format);
+        try (OutputStream os = Files.newOutputStream(entry.getPath())) {
+            os.write(content);
+        } catch (IOException e) {
+            archive.removeEntry(entry);
+            throw e;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds an empty entry to a CombineArchive. Its content can be then written directly through
+     * {@link Files#newOutputStream(Path, java.nio.file.OpenOption...)} on {@link ArchiveEntry#getPath()}.
+     * <p>
+     * CombineArchive only adds entries copied from files, so a single shared empty file is used for all of them
+     * instead of a temporary file per document.
+     */
+    static ArchiveEntry addEmptyEntry(CombineArchive archive, String docName, URI format) throws IOException {
+        return archive.addEntry(getEmptyFile(), docName, format);
+    }
+
+    private static synchronized File getEmptyFile() throws IOException {
+        if (emptyFile == null || !emptyFile.exists() || emptyFile.length() > 0) {
+            emptyFile = File.createTempFile("empty", ".tmp");
+            emptyFile.deleteOnExit();
+        }
+        return emptyFile;
     }
 
     static URI getModelURI(Path path) {
@@ -146,11 +284,10 @@ public class CombineArchiveUtil {
                 "execution of the node the prediction results are also available at the out-port as XML object in " +
                 "the column \"Data\".";
 
-        File tmpREADME = File.createTempFile("readme", ".txt");
-        FileUtils.writeStringToFile(tmpREADME, readme, "UTF-8");
-
-        ArchiveEntry entry = archive.addEntry(tmpREADME, "readme.txt", URIS.txt);
-        tmpREADME.delete();
+        ArchiveEntry entry = addEmptyEntry(archive, "readme.txt", URIS.txt);
+        try (OutputStream os = Files.newOutputStream(entry.getPath())) {
+            os.write(readme.getBytes(StandardCharsets.UTF_8));
+        }
 
         return entry;
     }
@@ -0,0 +1,137 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import java.net.URI;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compression of the entries of a written archive by entry type: SBML models, NuML data and the rest (readme,
+ * manifest and metadata).
+ * <p>
+ * CombineArchive deflates every entry with the default level. With other strategies the archive is written through a
+ * {@link ModelSink}, which compresses every entry with its level as it is written. Stored entries take more space but
+ * are read without inflating them, and large entries are best stored for the fastest reads. The best compression
+ * suits files kept for archiving.
+ */
+public class CompressionStrategy {
+
+    /** Level of the entries stored without compression */
+    public static final int STORED = -2;
+
+    /** Every entry deflated with the default level, like CombineArchive */
+    public static final CompressionStrategy DEFAULT = new CompressionStrategy(Deflater.DEFAULT_COMPRESSION,
+            Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_COMPRESSION);
+
+    /** Models and data stored for the fastest reads. The small remaining entries are deflated */
+    public static final CompressionStrategy FASTEST_READ = new CompressionStrategy(STORED, STORED,
+            Deflater.DEFAULT_COMPRESSION);
+
+    /** Every entry deflated with the best compression for the smallest files */
+    public static final CompressionStrategy SMALLEST = new CompressionStrategy(Deflater.BEST_COMPRESSION,
+            Deflater.BEST_COMPRESSION, Deflater.BEST_COMPRESSION);
+
+    private final int modelLevel;
+    private final int dataLevel;
+    private final int otherLevel;
+
+    /**
+     * @param modelLevel level of the SBML entries
+     * @param dataLevel  level of the NuML entries
+     * @param otherLevel level of the rest of entries
+     * @throws IllegalArgumentException if a level is not {@link #STORED}, {@link Deflater#DEFAULT_COMPRESSION} or
+     *                                  0-9
+     */
+    public CompressionStrategy(final int modelLevel, final int dataLevel, final int otherLevel) {
+        this.modelLevel = checkLevel(modelLevel);
+        this.dataLevel = checkLevel(dataLevel);
+        this.otherLevel = checkLevel(otherLevel);
+    }
+
+    private static int checkLevel(final int level) {
+        if (level != STORED && (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return level;
+    }
+
+    public int getModelLevel() {
+        return modelLevel;
+    }
+
+    public int getDataLevel() {
+        return dataLevel;
+    }
+
+    public int getOtherLevel() {
+        return otherLevel;
+    }
+
+    /**
+     * @param format format of the entry, or null for the entries not in the manifest
+     */
+    int getLevel(final URI format) {
+        if (URIS.numl.equals(format)) {
+            return dataLevel;
+        }
+        if (URIS.sbml.equals(format) || URIS.pmf.equals(format)) {
+            return modelLevel;
+        }
+        return otherLevel;
+    }
+
+    /**
+     * @return whether the archives written by CombineArchive are already compressed with this strategy
+     */
+    boolean isDefault() {
+        return modelLevel == Deflater.DEFAULT_COMPRESSION && dataLevel == Deflater.DEFAULT_COMPRESSION
+                && otherLevel == Deflater.DEFAULT_COMPRESSION;
+    }
+
+    /**
+     * Creates a zip entry compressed with the level for its format and sets that level on <code>zos</code>. Stored
+     * entries need their size and checksum before their content.
+     *
+     * @param format format of the entry, or null for the entries not in the manifest
+     */
+    ZipEntry createEntry(final String name, final URI format, final byte[] content, final ZipOutputStream zos) {
+        final ZipEntry entry = new ZipEntry(name);
+        final int level = getLevel(format);
+
+        if (level == STORED) {
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+            zos.setLevel(level);
+        }
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStrategy [modelLevel=" + modelLevel + ", dataLevel=" + dataLevel + ", otherLevel="
+                + otherLevel + "]";
+    }
+}
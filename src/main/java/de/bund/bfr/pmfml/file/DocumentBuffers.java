@@ -0,0 +1,372 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import de.unirostock.sems.cbarchive.ArchiveEntry;
+import de.unirostock.sems.cbarchive.CombineArchive;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Serializes the documents of a write job in parallel into byte buffers.
+ * <p>
+ * The writers first submit every document and then add the entries from a single thread, in the same order and with
+ * the same error handling as {@link CombineArchiveUtil#writeData(CombineArchive, NuMLDocument, String)} and
+ * {@link CombineArchiveUtil#writeModel(CombineArchive, SBMLDocument, String, URI)}. Thus the archive is identical to
+ * the one written sequentially. A buffer is released as soon as its last entry is added.
+ * <p>
+ * Entries are stored by content: a document added again with the same name and the same content, e.g. the data and
+ * primary model shared by several tertiary models, is not written again and the entry already written is returned.
+ * Equal documents under different names are stored under each name, since the models refer to them by name.
+ * <p>
+ * In streaming mode, for sinks and compressed writes, the content of the entries goes to an {@link EntryStore} and
+ * the archive only gets empty entries with their names and formats. No entry is kept by the buffers: a document with
+ * the name of an entry already in the archive is not added again.
+ */
+class DocumentBuffers {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Executor executor;
+    private final ProgressListener listener;
+    private final CancellationToken token;
+
+    // Receives the content of the entries in streaming mode, null otherwise
+    private EntryStore store;
+
+    // Documents are compared by identity: a document shared by several models is serialized once
+    private final Map<Object, Buffer> buffers = new IdentityHashMap<>();
+
+    // Entries already written by name and by entry
+    private final Map<String, StoredEntry> entriesByName = new HashMap<>();
+    private final Map<ArchiveEntry, StoredEntry> entries = new IdentityHashMap<>();
+
+    DocumentBuffers(Executor executor) {
+        this(executor, ProgressListener.NONE, new CancellationToken());
+    }
+
+    /**
+     * @param listener notified of every entry added
+     * @param token    checked before serializing and before adding every document
+     */
+    DocumentBuffers(Executor executor, ProgressListener listener, CancellationToken token) {
+        this.executor = executor;
+        this.listener = listener;
+        this.token = token;
+    }
+
+    /**
+     * Switches to streaming mode. It must be called before adding any entry.
+     */
+    void stream(EntryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Keeps the content of the entries out of the archive in streaming mode.
+     */
+    interface EntryStore {
+
+        void store(String docName, byte[] content) throws IOException;
+
+        /**
+         * @return whether the content was discarded. Content already written is kept and so is its entry.
+         */
+        boolean discard(String docName);
+    }
+
+    /**
+     * Serialized content of a document and the number of entries still to be added with it.
+     */
+    private static class Buffer {
+
+        final CompletableFuture<Content> content;
+        int pending;
+
+        Buffer(CompletableFuture<Content> content) {
+            this.content = content;
+        }
+    }
+
+    private static class Content {
+
+        final byte[] bytes;
+        final byte[] digest;
+
+        Content(byte[] bytes, boolean digested) {
+            this.bytes = bytes;
+            this.digest = digested ? digest(bytes) : null;
+        }
+    }
+
+    /**
+     * Entry written and the number of models referring to it.
+     */
+    private static class StoredEntry {
+
+        final String docName;
+        final byte[] digest;
+        final ArchiveEntry entry;
+        int references = 1;
+
+        StoredEntry(String docName, byte[] digest, ArchiveEntry entry) {
+            this.docName = docName;
+            this.digest = digest;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Submits a NuML document to be serialized. A document submitted n times is serialized once and its buffer is
+     * kept until it is added n times.
+     */
+    void submit(NuMLDocument doc) {
+        buffers.computeIfAbsent(doc, key -> new Buffer(CompletableFuture.supplyAsync(() -> {
+            token.throwIfCancelled();
+            try {
+                return new Content(CombineArchiveUtil.serializeData(doc), store == null);
+            } catch (IOException | ParserConfigurationException e) {
+                throw new CompletionException(e);
+            }
+        }, executor))).pending++;
+    }
+
+    /**
+     * Submits a SBML document to be serialized. A document submitted n times is serialized once and its buffer is
+     * kept until it is added n times.
+     */
+    void submit(SBMLDocument doc) {
+        buffers.computeIfAbsent(doc, key -> new Buffer(CompletableFuture.supplyAsync(() -> {
+            token.throwIfCancelled();
+            try {
+                return new Content(CombineArchiveUtil.serializeModel(doc), store == null);
+            } catch (XMLStreamException e) {
+                throw new CompletionException(e);
+            }
+        }, executor))).pending++;
+    }
+
+    /**
+     * @return future completed when every submitted document is serialized, successfully or not. Failures are
+     * reported when the documents are added.
+     */
+    CompletableFuture<Void> whenSerialized() {
+        return CompletableFuture.allOf(buffers.values().stream().map(buffer -> buffer.content)
+                .toArray(CompletableFuture<?>[]::new))
+                .handle((ignored, error) -> null);
+    }
+
+    /**
+     * Adds a NuML document serialized with {@link #submit(NuMLDocument)}. Not submitted documents are serialized in
+     * the calling thread.
+     *
+     * @return the entry added, or the entry already written with the same name and content
+     */
+    ArchiveEntry writeData(CombineArchive archive, NuMLDocument doc, String docName)
+            throws IOException, TransformerFactoryConfigurationError, TransformerException,
+            ParserConfigurationException {
+        return writeEntry(archive, takeData(doc), docName, URIS.numl);
+    }
+
+    /**
+     * Adds a SBML document serialized with {@link #submit(SBMLDocument)}. Not submitted documents are serialized in
+     * the calling thread.
+     *
+     * @return the entry added, or the entry already written with the same name and content
+     */
+    ArchiveEntry writeModel(CombineArchive archive, SBMLDocument doc, String docName, URI modelUri)
+            throws IOException, SBMLException, XMLStreamException {
+        return writeEntry(archive, takeModel(doc), docName, modelUri);
+    }
+
+    /**
+     * Removes an entry of a faulty model. An entry shared with other models is kept until none refers to it.
+     */
+    void removeEntry(CombineArchive archive, ArchiveEntry entry) throws IOException {
+        if (store != null) {
+            if (store.discard(entry.getFileName())) {
+                archive.removeEntry(entry);
+            }
+            return;
+        }
+
+        StoredEntry stored = entries.get(entry);
+        if (stored != null && --stored.references > 0) {
+            return;
+        }
+        if (stored != null) {
+            forget(stored);
+        }
+        archive.removeEntry(entry);
+    }
+
+    /**
+     * Forgets an entry removed from the archive by name, so that it is not returned again.
+     */
+    void entryRemoved(String docName) {
+        StoredEntry stored = entriesByName.get(docName);
+        if (stored != null) {
+            forget(stored);
+        }
+    }
+
+    private Content takeData(NuMLDocument doc) throws IOException, ParserConfigurationException {
+        if (!buffers.containsKey(doc)) {
+            submit(doc);
+        }
+        try {
+            return take(doc);
+        } catch (CompletionException e) {
+            Throwable cause = rethrowUnchecked(e);
+            if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException) cause;
+            }
+            throw (IOException) cause;
+        }
+    }
+
+    private Content takeModel(SBMLDocument doc) throws XMLStreamException {
+        if (!buffers.containsKey(doc)) {
+            submit(doc);
+        }
+        try {
+            return take(doc);
+        } catch (CompletionException e) {
+            // SBMLException is unchecked
+            throw (XMLStreamException) rethrowUnchecked(e);
+        }
+    }
+
+    /**
+     * Waits for the content of a document and releases its buffer after its last use.
+     */
+    private Content take(Object doc) {
+        Buffer buffer = buffers.get(doc);
+        if (--buffer.pending == 0) {
+            buffers.remove(doc);
+        }
+        return buffer.content.join();
+    }
+
+    private ArchiveEntry writeEntry(CombineArchive archive, Content content, String docName, URI format)
+            throws IOException {
+        token.throwIfCancelled();
+        if (store != null) {
+            return storeEntry(archive, content, docName, format);
+        }
+
+        StoredEntry stored = entriesByName.get(docName);
+        if (stored != null && Arrays.equals(stored.digest, content.digest)) {
+            stored.references++;
+            return stored.entry;
+        }
+
+        listener.entryStarted(docName, content.bytes.length);
+        long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            ArchiveEntry entry = CombineArchiveUtil.writeEntry(archive, content.bytes, docName, format);
+            if (stored != null) {
+                // Replaced by a different document with the same name
+                forget(stored);
+            }
+            stored = new StoredEntry(docName, content.digest, entry);
+            entriesByName.put(docName, stored);
+            entries.put(entry, stored);
+            successful = true;
+            return entry;
+        } finally {
+            listener.entryFinished(docName, content.bytes.length, System.nanoTime() - start, successful);
+        }
+    }
+
+    /**
+     * Adds an empty entry and passes its content to the store. Entries already in the archive are returned instead.
+     */
+    private ArchiveEntry storeEntry(CombineArchive archive, Content content, String docName, URI format)
+            throws IOException {
+        ArchiveEntry entry = archive.getEntry(docName);
+        if (entry != null) {
+            return entry;
+        }
+
+        listener.entryStarted(docName, content.bytes.length);
+        long start = System.nanoTime();
+        boolean successful = false;
+        try {
+            entry = CombineArchiveUtil.addEmptyEntry(archive, docName, format);
+            try {
+                store.store(docName, content.bytes);
+            } catch (IOException e) {
+                archive.removeEntry(entry);
+                throw e;
+            }
+            successful = true;
+            return entry;
+        } finally {
+            listener.entryFinished(docName, content.bytes.length, System.nanoTime() - start, successful);
+        }
+    }
+
+    /**
+     * Drops an entry that is removed or replaced.
+     */
+    private void forget(StoredEntry stored) {
+        entries.remove(stored.entry);
+        entriesByName.remove(stored.docName, stored);
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the checked cause of a failed serialization
+     */
+    private static Throwable rethrowUnchecked(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause;
+    }
+}
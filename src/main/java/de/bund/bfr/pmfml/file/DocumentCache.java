@@ -0,0 +1,281 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import org.sbml.jsbml.SBMLDocument;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Size bounded LRU cache of parsed documents shared by every {@link PMFArchive}, and thus by the *ModelFile readers.
+ * <p>
+ * Documents are keyed by the path and last modified time of the archive and by the name, CRC and size of the entry,
+ * which are taken from the zip central directory. A modified archive thus never hits stale documents. The size of a
+ * document is estimated by the uncompressed size of its entry, as a proxy for its heap usage, which is several times
+ * larger; the least recently used documents are evicted when the total exceeds the maximum size.
+ * <p>
+ * The cache is disabled unless set with {@link #setShared(DocumentCache)}:
+ * <pre>
+ * DocumentCache.setShared(new DocumentCache(256 * 1024 * 1024));
+ * </pre>
+ * The cache keeps its own copy of every document and every hit returns a new copy, so the documents read may be
+ * modified. NuML copies share the immutable {@link de.bund.bfr.pmfml.numl.TimeSeries}, so their cost does not grow
+ * with the number of points; see {@link NuMLDocument#copy()}.
+ */
+public class DocumentCache {
+
+    private static volatile DocumentCache shared;
+
+    private final long maxSize;
+
+    // Access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<Key, Value> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize maximum total uncompressed size of the cached entries in bytes. It bounds the heap used by the
+     *                documents only roughly, since a parsed document takes several times the size of its entry
+     */
+    public DocumentCache(final long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache used by the archives or null if caching is disabled
+     */
+    public static DocumentCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Sets the cache used by the archives opened from now on. Null disables caching.
+     */
+    public static void setShared(final DocumentCache cache) {
+        shared = cache;
+    }
+
+    /**
+     * Copies a document, so that the cached one is never handed out.
+     */
+    @FunctionalInterface
+    interface Copier<T> {
+        T copy(T document) throws Exception;
+    }
+
+    /**
+     * Wraps the reader of the entries of an archive. Entries whose CRC cannot be read are not cached.
+     *
+     * @param archivePath path to the archive file
+     * @param copier      copies the documents stored and returned by the cache
+     */
+    <T> CombineArchiveUtil.EntryReader<T> wrap(final Path archivePath, final CombineArchiveUtil.EntryReader<T> reader,
+                                               final Copier<T> copier) {
+        final Path archive = archivePath.toAbsolutePath().normalize();
+        final FileTime lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(archive);
+        } catch (IOException e) {
+            return reader;
+        }
+
+        return entryPath -> {
+            final Key key;
+            try {
+                final Map<String, Object> attributes = Files.readAttributes(entryPath, "zip:crc,size");
+                key = new Key(archive, lastModified, entryPath.toString(), (Long) attributes.get("crc"),
+                        (Long) attributes.get("size"));
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+                return reader.read(entryPath);
+            }
+
+            @SuppressWarnings("unchecked")
+            final T cached = (T) get(key);
+            if (cached != null) {
+                return copier.copy(cached);
+            }
+
+            // Parsed outside the lock. Concurrent misses of the same entry may parse it twice.
+            final T doc = reader.read(entryPath);
+            put(key, copier.copy(doc));
+            return doc;
+        };
+    }
+
+    /**
+     * @return deep copy of a SBML document
+     */
+    static SBMLDocument copy(final SBMLDocument doc) {
+        return doc.clone();
+    }
+
+    /**
+     * @return deep copy of a NuML document, which shares its immutable time series
+     */
+    static NuMLDocument copy(final NuMLDocument doc) {
+        return doc.copy();
+    }
+
+    private synchronized Object get(final Key key) {
+        final Value value = documents.get(key);
+        if (value == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return value.document;
+    }
+
+    private synchronized void put(final Key key, final Object document) {
+        if (key.size > maxSize) {
+            return;
+        }
+
+        final Value old = documents.put(key, new Value(document, key.size));
+        if (old != null) {
+            size -= old.size;
+        }
+        size += key.size;
+
+        final Iterator<Value> iterator = documents.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().size;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes the documents of an archive.
+     */
+    public synchronized void invalidate(final Path archivePath) {
+        final Path archive = archivePath.toAbsolutePath().normalize();
+        final Iterator<Map.Entry<Key, Value>> iterator = documents.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Key, Value> entry = iterator.next();
+            if (entry.getKey().archive.equals(archive)) {
+                size -= entry.getValue().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes every document. The statistics are kept.
+     */
+    public synchronized void invalidateAll() {
+        documents.clear();
+        size = 0;
+    }
+
+    /**
+     * @return number of cached documents
+     */
+    public synchronized int getNumDocuments() {
+        return documents.size();
+    }
+
+    /**
+     * @return total size of the cached entries in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DocumentCache [documents=" + documents.size() + ", size=" + size + ", maxSize=" + maxSize + ", hits="
+                + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    private static final class Key {
+
+        final Path archive;
+        final FileTime lastModified;
+        final String entryName;
+        final long crc;
+        final long size;
+
+        Key(final Path archive, final FileTime lastModified, final String entryName, final long crc,
+            final long size) {
+            this.archive = archive;
+            this.lastModified = lastModified;
+            this.entryName = entryName;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return crc == other.crc && size == other.size && archive.equals(other.archive)
+                    && lastModified.equals(other.lastModified) && entryName.equals(other.entryName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(archive, lastModified, entryName, crc, size);
+        }
+    }
+
+    private static final class Value {
+
+        final Object document;
+        final long size;
+
+        Value(final Object document, final long size) {
+            this.document = document;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Handle to a document in an open {@link PMFArchive}. The document is parsed the first time {@link #get()} is called
+ * and kept for later calls. A failed parse is kept as well and not retried. Handles can be used from several
+ * threads.
+ *
+ * @param <T> type of the document, {@link org.sbml.jsbml.SBMLDocument} or
+ *            {@link de.bund.bfr.pmfml.numl.NuMLDocument}
+ */
+public class DocumentHandle<T> {
+
+    private final String name;
+    private final Path path;
+    private final CombineArchiveUtil.EntryReader<T> reader;
+
+    private volatile T document;
+    private volatile IOException failure;
+
+    DocumentHandle(final String name, final Path path, final CombineArchiveUtil.EntryReader<T> reader) {
+        this.name = name;
+        this.path = path;
+        this.reader = reader;
+    }
+
+    /**
+     * @return file name of the entry
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return whether the document has already been parsed
+     */
+    public boolean isLoaded() {
+        return document != null;
+    }
+
+    /**
+     * @return whether the document was tried to be parsed and failed
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Returns the document, parsing it on the first call. The archive must still be open then.
+     *
+     * @throws IOException if the document could not be read, now or in a previous call
+     */
+    public T get() throws IOException {
+        T doc = document;
+        if (doc == null) {
+            synchronized (this) {
+                doc = document;
+                if (doc == null) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    try {
+                        doc = parse();
+                    } catch (IOException e) {
+                        failure = e;
+                        throw e;
+                    }
+                    document = doc;
+                }
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Returns the document without keeping it. A document already parsed is returned as is; any other is parsed
+     * again on every call, so it can be garbage collected as soon as the caller is done with it.
+     *
+     * @throws IOException if the document could not be read, now or in a previous call to {@link #get()}
+     */
+    T read() throws IOException {
+        final T doc = document;
+        if (doc != null) {
+            return doc;
+        }
+        final IOException error = failure;
+        if (error != null) {
+            throw error;
+        }
+        return parse();
+    }
+
+    private T parse() throws IOException {
+        try {
+            return reader.read(path);
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(name + " could not be read", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentHandle [name=" + name + ", loaded=" + isLoaded() + "]";
+    }
+}
@@ -31,12 +31,14 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -160,71 +162,140 @@ public class ExperimentalDataFile {
 
     /**
      * Reads experimental data files from a file. Faulty data files are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @return List of experimental data files
      * @throws CombineArchiveException error with the COMBINE archive
      */
     public static List<ExperimentalData> read(final Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-            List<ExperimentalData> dataRecords = new ArrayList<>();
-
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(URIS.numl)) {
-                String docName = entry.getFileName();
-
-                try {
-                    NuMLDocument doc = CombineArchiveUtil.readData(entry.getPath());
-                    dataRecords.add(new ExperimentalData(docName, doc));
-                } catch (IOException | ParserConfigurationException | SAXException e) {
-                    LOGGER.warning(docName + " could not be retrieved");
-                    e.printStackTrace();
-                }
-            }
-
-            return dataRecords;
-        } catch (IOException | ParseException | JDOMException | CombineArchiveException e) {
+    /**
+     * Reads data records from a file. Faulty models are skipped. Only the NuML documents are parsed, so the data of
+     * model files can be read too.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<ExperimentalData> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, Projection.DATA, options)) {
+            return archive.load(options.getExecutor()).getExperimentalData();
+        } catch (IOException e) {
             e.printStackTrace();
             throw new CombineArchiveException(e.getMessage());
         }
     }
 
+    /**
+     * Reads data records from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<ExperimentalData>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getExperimentalData);
+    }
+
     /**
      * Writes experimental data files to a PMF or PMFX file. Faulty data files are skipped Existent
      * files with the same filename are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param dataRecords
      * @throws CombineArchiveException errors with COMBINE archive
      */
-    public static void write(Path path, List<ExperimentalData> dataRecords) throws CombineArchiveException,
-            IOException {
-
-        // Remove if existent file
-        Files.deleteIfExists(path);
+    public static void write(Path path, List<ExperimentalData> dataRecords)
+            throws CombineArchiveException, IOException {
+        write(path, dataRecords, new WriteOptions());
+    }
 
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
+    /**
+     * Writes data records to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param dataRecords
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<ExperimentalData> dataRecords, WriteOptions options)
+            throws CombineArchiveException, IOException {
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (ExperimentalData ed : dataRecords) {
+            submit(buffers, ed);
+        }
 
-            // Add data records
-            for (ExperimentalData ed : dataRecords) {
-                try {
-                    CombineArchiveUtil.writeData(ca, ed.getDoc(), ed.getDocName());
-                } catch (TransformerException | ParserConfigurationException e) {
-                    LOGGER.warning(ed.getDocName() + " could not be saved");
-                    e.printStackTrace();
-                }
-            }
+        // Creates COMBINE archive
+        PMFArchive.write(path, ModelType.EXPERIMENTAL_DATA, dataRecords, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, model));
+    }
 
-            Element metadataAnnotation = new PMFMetadataNode(ModelType.EXPERIMENTAL_DATA, Collections.emptySet()).node;
-            ca.addDescription(new DefaultMetaDataObject(metadataAnnotation));
+    /**
+     * Writes data records to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<ExperimentalData> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.EXPERIMENTAL_DATA, models, executor,
+                ExperimentalDataFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, model));
+    }
 
-            CombineArchiveUtil.addReadme(ca);
+    /**
+     * Submits the documents of a data record to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, ExperimentalData ed) {
+        buffers.submit(ed.getDoc());
+    }
 
-            ca.pack();
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
+    /**
+     * Adds the entries of a data record to an archive being written. Faulty data records are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, ExperimentalData ed) throws IOException {
+        try {
+            buffers.writeData(ca, ed.getDoc(), ed.getDocName());
+        } catch (TransformerException | ParserConfigurationException e) {
+            LOGGER.warning(ed.getDocName() + " could not be saved");
             e.printStackTrace();
-            throw new CombineArchiveException(e.getMessage());
         }
     }
+
+    /**
+     * Opens a sink for writing data records to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<ExperimentalData> sink(Path path) throws CombineArchiveException, IOException {
+        return ModelSink.open(path, ModelType.EXPERIMENTAL_DATA,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, model));
+    }
+
+    /**
+     * Opens an editor for adding, replacing and removing data records in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<ExperimentalData> edit(Path path) throws CombineArchiveException, IOException {
+        return ModelEditor.open(path, ModelType.EXPERIMENTAL_DATA,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, model));
+    }
 }
@@ -31,12 +31,14 @@ import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -121,35 +123,46 @@ public class ManualSecondaryModelFile {
 
     /**
      * Reads manual secondary models from a PMF or PMFX file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static List<ManualSecondaryModel> read(Path path) throws CombineArchiveException {
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            List<ManualSecondaryModel> models = new ArrayList<>();
-
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String docName = entry.getFileName();
-                try {
-                    SBMLDocument doc = CombineArchiveUtil.readModel(entry.getPath());
-                    models.add(new ManualSecondaryModel(docName, doc));
-                } catch (IOException | XMLStreamException e) {
-                    LOGGER.warning(docName + " could not be retrieved");
-                    e.printStackTrace();
-                }
-            }
-
-            return models;
+        return read(path, new ReadOptions());
+    }
 
-        } catch (IOException | JDOMException | ParseException e) {
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+    /**
+     * Reads manual secondary models from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<ManualSecondaryModel> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getManualSecondaryModels();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new CombineArchiveException(e.getMessage());
         }
     }
 
+    /**
+     * Reads manual secondary models from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<ManualSecondaryModel>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getManualSecondaryModels);
+    }
+
     /**
      * Writes manual secondary models to a PMF or PMFX file. Faulty models are skipped. Existent files
      * with the same filename are overwritten.
@@ -198,43 +211,99 @@ public class ManualSecondaryModelFile {
     /**
      * Writes manual secondary models to a file. Faulty models are skipped. Existent files
      * with the same filename are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
      * @throws CombineArchiveException if the CombineArchive cannot be opened or closed properly
      */
-    public static void write(Path path, List<ManualSecondaryModel> models)
-            throws CombineArchiveException, IOException {
+    public static void write(Path path, List<ManualSecondaryModel> models) throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
 
+    /**
+     * Writes manual secondary models to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<ManualSecondaryModel> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (ManualSecondaryModel model : models) {
+            submit(buffers, model);
+        }
 
         // Creates COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            // Adds models
-            for (ManualSecondaryModel model : models) {
-                try {
-                    CombineArchiveUtil.writeModel(ca, model.getDoc(), model.getDocName(), modelUri);
-                } catch (SBMLException | XMLStreamException | IOException e) {
-                    LOGGER.warning(model.getDocName() + " could not be saved");
-                    e.printStackTrace();
-                }
-            }
+        PMFArchive.write(path, ModelType.MANUAL_SECONDARY_MODEL, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model));
+    }
 
-            // Adds description with model type
-            Element annot = new PMFMetadataNode(ModelType.MANUAL_SECONDARY_MODEL, Collections.emptySet()).node;
-            ca.addDescription(new DefaultMetaDataObject(annot));
+    /**
+     * Writes manual secondary models to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<ManualSecondaryModel> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.MANUAL_SECONDARY_MODEL, models, executor,
+                ManualSecondaryModelFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 
-            CombineArchiveUtil.addReadme(ca);
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, ManualSecondaryModel model) {
+        buffers.submit(model.getDoc());
+    }
 
-            ca.pack();
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri, ManualSecondaryModel model)
+            throws IOException {
+        try {
+            buffers.writeModel(ca, model.getDoc(), model.getDocName(), modelUri);
+        } catch (SBMLException | XMLStreamException | IOException e) {
+            LOGGER.warning(model.getDocName() + " could not be saved");
             e.printStackTrace();
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
         }
     }
+
+    /**
+     * Opens a sink for writing manual secondary models to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<ManualSecondaryModel> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.MANUAL_SECONDARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
+
+    /**
+     * Opens an editor for adding, replacing and removing manual secondary models in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<ManualSecondaryModel> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.MANUAL_SECONDARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 }
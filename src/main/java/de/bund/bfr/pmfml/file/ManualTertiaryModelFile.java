@@ -35,11 +35,14 @@ import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * Case 2c: Manual secondary models. Secondary models generated manually.
@@ -154,64 +157,56 @@ public class ManualTertiaryModelFile {
 
     /**
      * Reads manual tertiary models from a file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static List<ManualTertiaryModel> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        Map<String, SBMLDocument> tertDocMap = new HashMap<>();
-        Map<String, SBMLDocument> secDocMap = new HashMap<>();
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            MetaDataObject mdo = ca.getDescriptions().get(0);
-            Element metaParent = mdo.getXmlDescription();
-            PMFMetadataNode metadataAnnotation = new PMFMetadataNode(metaParent);
-            Set<String> masterFiles = metadataAnnotation.masterFiles;
-
-            // Classify models into tertiary or secondary models
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String docName = entry.getFileName();
-                try {
-                    SBMLDocument doc = CombineArchiveUtil.readModel(entry.getPath());
-                    if (masterFiles.contains(docName)) {
-                        tertDocMap.put(docName, doc);
-                    } else {
-                        secDocMap.put(docName, doc);
-                    }
-                } catch (IOException | XMLStreamException e) {
-                    LOGGER.warning(docName + " could not be read");
-                }
-            }
-        } catch (IOException | JDOMException | ParseException error) {
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+    /**
+     * Reads manual tertiary models from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<ManualTertiaryModel> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getManualTertiaryModels();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new CombineArchiveException(e.getMessage());
         }
+    }
 
-        List<ManualTertiaryModel> models = new ArrayList<>();
-        for (Map.Entry<String, SBMLDocument> entry : tertDocMap.entrySet()) {
-            String tertDocName = entry.getKey();
-            SBMLDocument tertDoc = entry.getValue();
-
-            List<String> secModelNames = new ArrayList<>();
-            List<SBMLDocument> secModels = new ArrayList<>();
-            CompSBMLDocumentPlugin plugin = (CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel);
-
-            // Gets secondary models
-            for (ExternalModelDefinition emd : plugin.getListOfExternalModelDefinitions()) {
-                String secModelName = emd.getSource();
-                secModelNames.add(secModelName);
-
-                SBMLDocument secModel = secDocMap.get(secModelName);
-                secModels.add(secModel);
-            }
-
-            models.add(new ManualTertiaryModel(tertDocName, tertDoc, secModelNames, secModels));
-        }
+    /**
+     * Reads manual tertiary models from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<ManualTertiaryModel>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getManualTertiaryModels);
+    }
 
-        return models;
+    /**
+     * Reads manual tertiary models from a file one at a time. Faulty models are skipped.
+     * Only the documents of the current model are held in memory, so very large files can be processed. The file
+     * stays open until the stream is closed, so the stream should be used with try-with-resources.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static Stream<ManualTertiaryModel> stream(Path path) throws CombineArchiveException {
+        return PMFArchive.stream(path, PMFArchive::streamManualTertiaryModels);
     }
 
     /**
@@ -277,56 +272,114 @@ public class ManualTertiaryModelFile {
     /**
      * Writes manual tertiary model to a file. Faulty models are skipped. Existent files
      * are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static void write(Path path, List<ManualTertiaryModel> models) throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
+
+    /**
+     * Writes manual tertiary models to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<ManualTertiaryModel> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (ManualTertiaryModel model : models) {
+            submit(buffers, model);
+        }
 
         // Creates COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            Set<String> masterFiles = new HashSet<>(models.size());
+        PMFArchive.write(path, ModelType.MANUAL_TERTIARY_MODEL, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model, masterFiles));
+    }
 
-            // Adds models and data
-            for (ManualTertiaryModel model : models) {
-                try {
-                    ArchiveEntry masterEntry = CombineArchiveUtil.writeModel(ca, model.getTertiaryDoc(), model
-                            .getTertiaryDocName(), modelUri);
-                    masterFiles.add(masterEntry.getPath().getFileName().toString());
-                } catch (IOException | SBMLException | XMLStreamException e) {
-                    LOGGER.warning(model.getTertiaryDocName() + " could not be saved");
-                    continue;
-                }
+    /**
+     * Writes manual tertiary models to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<ManualTertiaryModel> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.MANUAL_TERTIARY_MODEL, models, executor,
+                ManualTertiaryModelFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 
-                for (int i = 0; i < model.getSecDocs().size(); i++) {
-                    SBMLDocument secDoc = model.getSecDocs().get(i);
-                    String secDocName = model.getSecDocNames().get(i);
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, ManualTertiaryModel model) {
+        buffers.submit(model.getTertiaryDoc());
+        model.getSecDocs().forEach(buffers::submit);
+    }
 
-                    try {
-                        CombineArchiveUtil.writeModel(ca, secDoc, secDocName, modelUri);
-                    } catch (IOException | SBMLException | XMLStreamException e) {
-                        LOGGER.warning(secDocName + " could not be saved");
-                    }
-                }
-            }
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri,
+                    ManualTertiaryModel model, Set<String> masterFiles)
+            throws IOException {
+        try {
+            ArchiveEntry masterEntry = buffers.writeModel(ca, model.getTertiaryDoc(), model
+                    .getTertiaryDocName(), modelUri);
+            masterFiles.add(masterEntry.getPath().getFileName().toString());
+        } catch (IOException | SBMLException | XMLStreamException e) {
+            LOGGER.warning(model.getTertiaryDocName() + " could not be saved");
+            return;
+        }
 
-            Element annot = new PMFMetadataNode(ModelType.MANUAL_TERTIARY_MODEL, masterFiles).node;
-            ca.addDescription(new DefaultMetaDataObject(annot));
+        for (int i = 0; i < model.getSecDocs().size(); i++) {
+            SBMLDocument secDoc = model.getSecDocs().get(i);
+            String secDocName = model.getSecDocNames().get(i);
 
-            CombineArchiveUtil.addReadme(ca);
+            try {
+                buffers.writeModel(ca, secDoc, secDocName, modelUri);
+            } catch (IOException | SBMLException | XMLStreamException e) {
+                LOGGER.warning(secDocName + " could not be saved");
+            }
+        }
+    }
 
-            ca.pack();
+    /**
+     * Opens a sink for writing manual tertiary models to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<ManualTertiaryModel> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.MANUAL_TERTIARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
-            e.printStackTrace();
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
-        }
+    /**
+     * Opens an editor for adding, replacing and removing manual tertiary models in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<ManualTertiaryModel> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.MANUAL_TERTIARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
     }
 }
@@ -0,0 +1,319 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-mapped view of the stored (not compressed) entries of a zip file.
+ * <p>
+ * The whole file is mapped once and the central directory is read to locate the content of every stored entry. The
+ * content of these entries is then read straight from the mapping, with no inflating and no copying into
+ * intermediate buffers. Deflated entries are not mapped and must be read through the zip file system.
+ * <p>
+ * Files over 2 GB and ZIP64 files are not mapped. Some platforms, e.g. Windows, do not allow deleting or replacing a
+ * file while it is mapped, so the mapping is released on {@link #close()}, once the streams still open are closed.
+ * Where the JDK does not allow releasing it explicitly, it is left to the garbage collector.
+ */
+class MappedArchive implements Closeable {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private static final int STORED = 0;
+    private static final long ZIP64_MARKER = 0xffffffffL;
+
+    // Null once released
+    private MappedByteBuffer buffer;
+
+    // Content of the stored entries by name
+    private final Map<String, Region> entries;
+
+    private int numOpenStreams;
+    private boolean closed;
+
+    private static class Region {
+
+        final int offset;
+        final int size;
+
+        Region(final int offset, final int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private MappedArchive(final MappedByteBuffer buffer, final Map<String, Region> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps a zip file.
+     *
+     * @throws IOException if the file could not be mapped or is not a valid zip file
+     */
+    static MappedArchive map(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return new MappedArchive(null, Collections.emptyMap());
+            }
+
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new MappedArchive(buffer, readStoredEntries(buffer));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(path.getFileName() + " is not a valid zip file", e);
+        }
+    }
+
+    /**
+     * @return number of stored entries
+     */
+    int getNumEntries() {
+        return entries.size();
+    }
+
+    /**
+     * @return whether an entry is stored and can be read from the mapping
+     */
+    boolean isMapped(final String entryName) {
+        return entries.containsKey(entryName);
+    }
+
+    /**
+     * Opens a stored entry. The stream must be closed for the mapping to be released.
+     *
+     * @return stream over the mapped content of the entry, or null if the entry is not stored
+     * @throws IOException if the archive is closed
+     */
+    synchronized InputStream open(final String entryName) throws IOException {
+        if (closed) {
+            throw new IOException("Mapped archive closed");
+        }
+        final Region region = entries.get(entryName);
+        if (region == null) {
+            return null;
+        }
+
+        // Each stream gets its own view, so entries can be read concurrently
+        final ByteBuffer view = buffer.duplicate();
+        // Buffer methods, since the covariant ByteBuffer overrides of Java 9 do not exist in Java 8
+        ((Buffer) view).position(region.offset);
+        ((Buffer) view).limit(region.offset + region.size);
+        numOpenStreams++;
+        return new ByteBufferInputStream(view.slice());
+    }
+
+    /**
+     * Releases the mapping, or lets the last stream open release it when closed. Entries cannot be opened afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (numOpenStreams == 0) {
+            release();
+        }
+    }
+
+    private synchronized void releaseStream() {
+        numOpenStreams--;
+        if (closed && numOpenStreams == 0) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (buffer != null) {
+            unmap(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Unmaps a buffer without waiting for the garbage collector, through sun.misc.Unsafe in Java 9 and later and
+     * through the cleaner of the buffer in Java 8. The buffer must not be accessed afterwards.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    private static Map<String, Region> readStoredEntries(final ByteBuffer buffer) throws IOException {
+        final int end = findEnd(buffer);
+        final int numEntries = Short.toUnsignedInt(buffer.getShort(end + 10));
+        final long centralOffset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        if (centralOffset == ZIP64_MARKER) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, Region> entries = new HashMap<>();
+        int position = (int) centralOffset;
+        for (int i = 0; i < numEntries; i++) {
+            if (buffer.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new IOException("Invalid central directory");
+            }
+            final int method = Short.toUnsignedInt(buffer.getShort(position + 10));
+            final long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+            final int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+            final int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+            final int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+            final long localOffset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+
+            if (method == STORED && compressedSize != ZIP64_MARKER && localOffset != ZIP64_MARKER) {
+                final String name = readName(buffer, position + CENTRAL_SIZE, nameLength);
+                entries.put(name, new Region(getContentOffset(buffer, (int) localOffset), (int) compressedSize));
+            }
+
+            position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    /**
+     * @return offset of the end of central directory record, searched backwards from the end of the file
+     */
+    private static int findEnd(final ByteBuffer buffer) throws IOException {
+        final int last = buffer.limit() - END_SIZE;
+        for (int position = last; position >= 0 && position >= last - MAX_COMMENT_SIZE; position--) {
+            if (buffer.getInt(position) == END_SIGNATURE) {
+                return position;
+            }
+        }
+        throw new IOException("End of central directory not found");
+    }
+
+    /**
+     * @return offset of the content of an entry. Its local header may have other extra fields than the central one.
+     */
+    private static int getContentOffset(final ByteBuffer buffer, final int localOffset) throws IOException {
+        if (buffer.getInt(localOffset) != LOCAL_SIGNATURE) {
+            throw new IOException("Invalid local header");
+        }
+        final int nameLength = Short.toUnsignedInt(buffer.getShort(localOffset + 26));
+        final int extraLength = Short.toUnsignedInt(buffer.getShort(localOffset + 28));
+        return localOffset + LOCAL_SIZE + nameLength + extraLength;
+    }
+
+    private static String readName(final ByteBuffer buffer, final int offset, final int length) {
+        final byte[] name = new byte[length];
+        final ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(offset);
+        view.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a view of the mapping from its position to its limit.
+     */
+    private class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+        private boolean streamClosed;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // The mapping may be released once the stream is closed
+        private void ensureOpen() throws IOException {
+            if (streamClosed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureOpen();
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            ensureOpen();
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            ensureOpen();
+            final int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            ((Buffer) buffer).position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (!streamClosed) {
+                streamClosed = true;
+                releaseStream();
+            }
+        }
+    }
+}
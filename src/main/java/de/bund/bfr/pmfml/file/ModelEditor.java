@@ -0,0 +1,236 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.unirostock.sems.cbarchive.CombineArchive;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+import de.unirostock.sems.cbarchive.meta.MetaDataObject;
+import org.jdom2.JDOMException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Adds, replaces and removes models in an existing PMF or PMFX file.
+ * <p>
+ * The file is copied and the copy is edited in place: the entries not touched are neither parsed nor serialized and
+ * are copied byte for byte into the new file. The {@link PMFMetadataNode} description with the master files and the
+ * manifest are updated on {@link #close()}, which then replaces the file with the copy. Editors are opened by the
+ * *ModelFile classes, e.g. {@link PrimaryModelWDataFile#edit(Path)}:
+ * <pre>
+ * try (ModelEditor&lt;PrimaryModelWData&gt; editor = PrimaryModelWDataFile.edit(path)) {
+ *     editor.remove(oldModel.getModelDocName());
+ *     editor.add(newModel);
+ * }
+ * </pre>
+ * Faulty models are skipped, as in the write methods. If the copy cannot be written it is removed, the file is left
+ * unchanged and the editor accepts no more changes.
+ *
+ * @param <M> type of the models
+ */
+public class ModelEditor<M> implements AutoCloseable {
+
+    private final Path path;
+    private final Path copy;
+    private final ModelType modelType;
+    private final ModelSink.ModelWriter<M> writer;
+    private final CombineArchive archive;
+
+    // Documents are serialized in the calling thread and released as soon as they are added
+    private final DocumentBuffers buffers = new DocumentBuffers(Runnable::run);
+    private final Set<String> masterFiles;
+
+    private boolean closed;
+
+    private ModelEditor(final Path path, final Path copy, final ModelType modelType,
+                        final ModelSink.ModelWriter<M> writer, final CombineArchive archive,
+                        final Set<String> masterFiles) {
+        this.path = path;
+        this.copy = copy;
+        this.modelType = modelType;
+        this.writer = writer;
+        this.archive = archive;
+        this.masterFiles = masterFiles;
+    }
+
+    /**
+     * Opens a copy of an existing file with models of type <code>modelType</code>.
+     *
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    static <M> ModelEditor<M> open(final Path path, final ModelType modelType, final ModelSink.ModelWriter<M> writer)
+            throws CombineArchiveException, IOException {
+
+        // The copy is created next to the file, so that it can be moved over it
+        final Path absolutePath = path.toAbsolutePath();
+        final Path copy = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+
+        CombineArchive archive = null;
+        try {
+            Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+            archive = new CombineArchive(copy.toFile());
+
+            // The description is written again on close with the updated master files
+            final List<MetaDataObject> descriptions = archive.getDescriptions();
+            if (descriptions.isEmpty()) {
+                throw new CombineArchiveException(path.getFileName() + " has no model type");
+            }
+            final PMFMetadataNode metadataNode = new PMFMetadataNode(descriptions.get(0).getXmlDescription());
+            if (metadataNode.modelType != modelType) {
+                throw new CombineArchiveException(path.getFileName() + " holds " + metadataNode.modelType);
+            }
+            archive.removeDescription(descriptions.get(0));
+
+            return new ModelEditor<>(path, copy, modelType, writer, archive, new HashSet<>(metadataNode.masterFiles));
+        } catch (CombineArchiveException | IOException e) {
+            discard(archive, copy);
+            throw e;
+        } catch (JDOMException | ParseException | RuntimeException e) {
+            e.printStackTrace();
+            discard(archive, copy);
+            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+        }
+    }
+
+    /**
+     * Adds the entries of a model to the file. Entries with the same names as existing entries replace them, so a
+     * model is replaced by adding it again.
+     *
+     * @throws CombineArchiveException if the archive could not be written. The file is left unchanged.
+     * @throws IllegalStateException   if the editor is closed
+     */
+    public void add(final M model) throws CombineArchiveException {
+        checkOpen();
+
+        try {
+            writer.add(archive, buffers, model, masterFiles);
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+        }
+    }
+
+    /**
+     * Removes a document from the file. Documents shared by other models, e.g. the primary models of several
+     * tertiary models, should be kept.
+     *
+     * @return whether the document was in the file
+     * @throws CombineArchiveException if the archive could not be written. The file is left unchanged.
+     * @throws IllegalStateException   if the editor is closed
+     */
+    public boolean remove(final String docName) throws CombineArchiveException {
+        checkOpen();
+
+        try {
+            masterFiles.remove(docName);
+            buffers.entryRemoved(docName);
+            return archive.removeEntry(docName);
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the file has a document named <code>docName</code>
+     */
+    public boolean contains(final String docName) {
+        return archive.getEntry(docName) != null;
+    }
+
+    /**
+     * @return names of the master files, e.g. the tertiary model documents
+     */
+    public Set<String> getMasterFiles() {
+        return new HashSet<>(masterFiles);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the description with the updated master files and the manifest, and replaces the file with the edited
+     * copy. Closing a closed editor has no effect.
+     *
+     * @throws CombineArchiveException if the archive could not be written. The file is left unchanged.
+     */
+    @Override
+    public void close() throws CombineArchiveException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            PMFArchive.finish(archive, modelType, masterFiles);
+            archive.close();
+        } catch (Exception e) {
+            abort(e);
+        }
+        closed = true;
+
+        try {
+            Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            discard(null, copy);
+            throw new CombineArchiveException(path.getFileName() + " could not be replaced");
+        }
+
+        final DocumentCache cache = DocumentCache.getShared();
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException(path.getFileName() + " is closed");
+        }
+    }
+
+    private void abort(final Exception cause) throws CombineArchiveException {
+        closed = true;
+        cause.printStackTrace();
+        discard(archive, copy);
+        throw new CombineArchiveException(path.getFileName() + " could not be written");
+    }
+
+    /**
+     * Closes and removes the copy.
+     */
+    private static void discard(final CombineArchive archive, final Path copy) {
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            Files.deleteIfExists(copy);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.unirostock.sems.cbarchive.CombineArchive;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+import org.jdom2.JDOMException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes models to a new PMF or PMFX file one at a time.
+ * <p>
+ * The entries of a model are written to the file as soon as the model is accepted, so neither the models nor their
+ * documents are kept in memory. The {@link PMFMetadataNode} description with the master files, the readme and the
+ * manifest are written on {@link #close()}. For them a scratch CombineArchive next to the file gets an empty entry
+ * for every document, so only the names and formats of the entries are kept until then. A document with the name of
+ * an entry already written, e.g. a primary model shared by several tertiary models, is not written again. Sinks are
+ * opened by the *ModelFile classes, e.g.
+ * {@link PrimaryModelWDataFile#sink(Path)}:
+ * <pre>
+ * try (ModelSink&lt;PrimaryModelWData&gt; sink = PrimaryModelWDataFile.sink(path)) {
+ *     for (PrimaryModelWData model : models) {
+ *         sink.accept(model);
+ *     }
+ * }
+ * </pre>
+ * Faulty models are skipped, as in the write methods. If the archive itself cannot be written the file is removed and
+ * the sink accepts no more models.
+ * <p>
+ * The write methods also go through a sink to compress the entries with a {@link CompressionStrategy} other than the
+ * default one.
+ *
+ * @param <M> type of the models
+ */
+public class ModelSink<M> implements AutoCloseable {
+
+    /**
+     * Adds the entries of a model. Master files are collected for the description.
+     */
+    @FunctionalInterface
+    interface ModelWriter<M> {
+        void add(CombineArchive archive, DocumentBuffers buffers, M model, Set<String> masterFiles)
+                throws IOException;
+    }
+
+    private final Path path;
+    private final ModelType modelType;
+    private final ModelWriter<M> writer;
+    private final CompressionStrategy compression;
+    private final ZipOutputStream out;
+
+    // Scratch archive with empty entries for the manifest and the description
+    private final Path scratch;
+    private final CombineArchive archive;
+
+    // Entries of the model being accepted. They are written once it is complete, so a faulty model leaves nothing.
+    private final Map<String, byte[]> pending = new LinkedHashMap<>();
+    private final DocumentBuffers buffers;
+    private final Set<String> masterFiles = new HashSet<>();
+
+    private int numModels;
+    private boolean closed;
+
+    private ModelSink(final Path path, final ModelType modelType, final ModelWriter<M> writer,
+                      final DocumentBuffers buffers, final CompressionStrategy compression, final ZipOutputStream out,
+                      final Path scratch, final CombineArchive archive) {
+        this.path = path;
+        this.modelType = modelType;
+        this.writer = writer;
+        this.buffers = buffers;
+        this.compression = compression;
+        this.out = out;
+        this.scratch = scratch;
+        this.archive = archive;
+
+        buffers.stream(new DocumentBuffers.EntryStore() {
+            @Override
+            public void store(final String docName, final byte[] content) {
+                pending.put(docName, content);
+            }
+
+            @Override
+            public boolean discard(final String docName) {
+                return pending.remove(docName) != null;
+            }
+        });
+    }
+
+    /**
+     * Creates a new file, overwriting any existent file.
+     *
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    static <M> ModelSink<M> open(final Path path, final ModelType modelType, final ModelWriter<M> writer)
+            throws CombineArchiveException, IOException {
+        return open(path, modelType, writer, new DocumentBuffers(Runnable::run), CompressionStrategy.DEFAULT);
+    }
+
+    /**
+     * Creates a new file, overwriting any existent file, whose entries are compressed with <code>compression</code>.
+     *
+     * @param buffers buffers of the documents, switched to streaming mode. Their listener and token apply to the
+     *                entries accepted.
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    static <M> ModelSink<M> open(final Path path, final ModelType modelType, final ModelWriter<M> writer,
+                                 final DocumentBuffers buffers, final CompressionStrategy compression)
+            throws CombineArchiveException, IOException {
+
+        // Remove if existent file
+        Files.deleteIfExists(path);
+
+        // The scratch archive is created by CombineArchive, so only its name is taken
+        final Path absolutePath = path.toAbsolutePath();
+        final Path scratch = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(),
+                ".tmp");
+        Files.delete(scratch);
+
+        ZipOutputStream out = null;
+        CombineArchive archive = null;
+        try {
+            out = new ZipOutputStream(Files.newOutputStream(path));
+            archive = new CombineArchive(scratch.toFile());
+            return new ModelSink<>(path, modelType, writer, buffers, compression, out, scratch, archive);
+        } catch (IOException | JDOMException | ParseException | CombineArchiveException e) {
+            e.printStackTrace();
+            discard(path, out, scratch, archive);
+            throw new CombineArchiveException(path.getFileName() + " could not be created");
+        }
+    }
+
+    /**
+     * Adds the entries of a model to the file.
+     *
+     * @throws CombineArchiveException if the archive could not be written. The file is removed.
+     * @throws CancellationException   if the token of the buffers was cancelled. The file is removed too.
+     * @throws IllegalStateException   if the sink is closed
+     */
+    public void accept(final M model) throws CombineArchiveException {
+        if (closed) {
+            throw new IllegalStateException(path.getFileName() + " is closed");
+        }
+
+        try {
+            writer.add(archive, buffers, model, masterFiles);
+            for (final Map.Entry<String, byte[]> entry : pending.entrySet()) {
+                final URI format = archive.getEntry(entry.getKey()).getFormat();
+                out.putNextEntry(compression.createEntry(entry.getKey(), format, entry.getValue(), out));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+            pending.clear();
+            numModels++;
+        } catch (IOException | RuntimeException e) {
+            abort(e);
+        }
+    }
+
+    /**
+     * @return number of models accepted so far
+     */
+    public int getNumModels() {
+        return numModels;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes the description with the model type and the master files, the readme and the manifest, and closes the
+     * file. Closing a closed sink has no effect.
+     *
+     * @throws CombineArchiveException if the archive could not be written. The file is removed.
+     */
+    @Override
+    public void close() throws CombineArchiveException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            PMFArchive.finish(archive, modelType, masterFiles);
+            archive.close();
+
+            // Copies the entries written by CombineArchive. The rest are the empty entries of the documents.
+            try (FileSystem zipfs = FileSystems.newFileSystem(scratch, (ClassLoader) null)) {
+                for (final String location : new String[]{"/readme.txt", CombineArchive.METADATA_LOCATION,
+                        CombineArchive.MANIFEST_LOCATION}) {
+                    final byte[] content = Files.readAllBytes(zipfs.getPath(location));
+                    out.putNextEntry(compression.createEntry(location.substring(1), null, content, out));
+                    out.write(content);
+                    out.closeEntry();
+                }
+            }
+            out.close();
+            Files.delete(scratch);
+        } catch (Exception e) {
+            abort(e);
+        }
+        closed = true;
+    }
+
+    private void abort(final Exception cause) throws CombineArchiveException {
+        closed = true;
+        discard(path, out, scratch, archive);
+        if (cause instanceof CancellationException) {
+            throw (CancellationException) cause;
+        }
+        cause.printStackTrace();
+        throw new CombineArchiveException(path.getFileName() + " could not be written");
+    }
+
+    /**
+     * Closes and removes the file and the scratch archive.
+     */
+    private static void discard(final Path path, final ZipOutputStream out, final Path scratch,
+                                final CombineArchive archive) {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (archive != null) {
+                archive.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            Files.deleteIfExists(path);  // Removes faulty file
+            Files.deleteIfExists(scratch);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -41,10 +41,12 @@ import javax.xml.transform.TransformerFactoryConfigurationError;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -165,69 +167,46 @@ public class OneStepSecondaryModelFile {
 
     /**
      * Reads {@link OneStepSecondaryModel}(s) from a file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static List<OneStepSecondaryModel> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            List<OneStepSecondaryModel> models = new ArrayList<>();
-
-            // Gets data entries
-            Map<String, NuMLDocument> dataEntryMap = new HashMap<>();
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(URIS.numl)) {
-                try {
-                    NuMLDocument doc = CombineArchiveUtil.readData(entry.getPath());
-                    dataEntryMap.put(entry.getFileName(), doc);
-                } catch (IOException | ParserConfigurationException | SAXException e) {
-                    LOGGER.warning(entry.getFileName() + ": could not be read");
-                }
-            }
-
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String modelName = entry.getFileName();
-
-                SBMLDocument modelDoc;
-                try {
-                    modelDoc = CombineArchiveUtil.readModel(entry.getPath());
-                } catch (IOException | SBMLException | XMLStreamException e) {
-                    LOGGER.warning(entry.getFileName() + ": could not be read");
-                    continue;
-                }
-
-                // Looks for DataSourceNode
-                CompSBMLDocumentPlugin secCompPlugin = (CompSBMLDocumentPlugin) modelDoc.getPlugin(CompConstants
-                        .shortLabel);
-                ModelDefinition md = secCompPlugin.getModelDefinition(0);
-                XMLNode m2Annot = md.getAnnotation().getNonRDFannotation();
-                XMLNode metadata = m2Annot.getChildElement("metadata", "");
-
-                List<String> numlDocNames = new ArrayList<>();
-                List<NuMLDocument> numlDocs = new ArrayList<>();
-
-                for (XMLNode node : metadata.getChildElements("dataSource", "")) {
-                    DataSourceNode dsn = new DataSourceNode(node);
-                    String dataFileName = dsn.getFile();
-
-                    numlDocNames.add(dataFileName);
-                    numlDocs.add(dataEntryMap.get(dataFileName));
-                }
-
-                models.add(new OneStepSecondaryModel(modelName, modelDoc, numlDocNames, numlDocs));
-            }
-
-            return models;
-
-        } catch (IOException | ParseException | JDOMException e) {
+    /**
+     * Reads one step secondary models from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<OneStepSecondaryModel> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getOneStepSecondaryModels();
+        } catch (IOException e) {
             e.printStackTrace();
             throw new CombineArchiveException(e.getMessage());
         }
     }
 
+    /**
+     * Reads one step secondary models from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<OneStepSecondaryModel>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getOneStepSecondaryModels);
+    }
+
     /**
      * Writes one step secondary models to a PMF or PMFX file. Faulty models are skipped. Existent
      * files are overwritten.
@@ -288,6 +267,7 @@ public class OneStepSecondaryModelFile {
     /**
      * Writes one step secondary models to a PMF or PMFX file. Faulty models are skipped. Existent
      * files are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
@@ -295,47 +275,105 @@ public class OneStepSecondaryModelFile {
      */
     public static void write(Path path, List<OneStepSecondaryModel> models)
             throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
 
+    /**
+     * Writes one step secondary models to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<OneStepSecondaryModel> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (OneStepSecondaryModel model : models) {
+            submit(buffers, model);
+        }
 
         // Creates COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
+        PMFArchive.write(path, ModelType.ONE_STEP_SECONDARY_MODEL, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model));
+    }
 
-            for (OneStepSecondaryModel model : models) {
-                List<ArchiveEntry> addedEntries = new ArrayList<>();
+    /**
+     * Writes one step secondary models to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<OneStepSecondaryModel> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.ONE_STEP_SECONDARY_MODEL, models, executor,
+                OneStepSecondaryModelFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 
-                try {
-                    for (int i = 0; i < model.getDataDocs().size(); i++) {
-                        String dataDocName = model.getDataDocNames().get(i);
-                        NuMLDocument dataDoc = model.getDataDocs().get(i);
-                        addedEntries.add(CombineArchiveUtil.writeData(ca, dataDoc, dataDocName));
-                    }
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, OneStepSecondaryModel model) {
+        model.getDataDocs().forEach(buffers::submit);
+        buffers.submit(model.getModelDoc());
+    }
 
-                    addedEntries.add(CombineArchiveUtil.writeModel(ca, model.getModelDoc(), model.getModelDocName(),
-                            modelUri));
-                } catch (IOException | TransformerFactoryConfigurationError | TransformerException |
-                        ParserConfigurationException | SBMLException | XMLStreamException e) {
-                    LOGGER.warning(model.getModelDocName() + ": could not be read");
-                    for (ArchiveEntry entry : addedEntries) {
-                        ca.removeEntry(entry);
-                    }
-                }
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri, OneStepSecondaryModel model)
+            throws IOException {
+        List<ArchiveEntry> addedEntries = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < model.getDataDocs().size(); i++) {
+                String dataDocName = model.getDataDocNames().get(i);
+                NuMLDocument dataDoc = model.getDataDocs().get(i);
+                addedEntries.add(buffers.writeData(ca, dataDoc, dataDocName));
             }
 
-            Element annot = new PMFMetadataNode(ModelType.ONE_STEP_SECONDARY_MODEL, Collections.emptySet()).node;
-            ca.addDescription(new DefaultMetaDataObject(annot));
-
-            CombineArchiveUtil.addReadme(ca);
+            addedEntries.add(buffers.writeModel(ca, model.getModelDoc(), model.getModelDocName(),
+                    modelUri));
+        } catch (IOException | TransformerFactoryConfigurationError | TransformerException |
+                ParserConfigurationException | SBMLException | XMLStreamException e) {
+            LOGGER.warning(model.getModelDocName() + ": could not be read");
+            for (ArchiveEntry entry : addedEntries) {
+                buffers.removeEntry(ca, entry);
+            }
+        }
+    }
 
-            ca.pack();
+    /**
+     * Opens a sink for writing one step secondary models to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<OneStepSecondaryModel> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.ONE_STEP_SECONDARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
-            e.printStackTrace();
-            throw new CombineArchiveException(e.getMessage());
-        }
+    /**
+     * Opens an editor for adding, replacing and removing one step secondary models in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<OneStepSecondaryModel> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.ONE_STEP_SECONDARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
     }
 }
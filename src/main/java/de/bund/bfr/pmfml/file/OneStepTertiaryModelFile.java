@@ -40,11 +40,14 @@ import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * Case 3b: File with tertiary model generated with 1-step fit approach.
@@ -184,92 +187,56 @@ public class OneStepTertiaryModelFile {
 
     /**
      * Reads one step tertiary models from a file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static List<OneStepTertiaryModel> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        Map<String, SBMLDocument> tertDocs = new HashMap<>();
-        Map<String, SBMLDocument> secDocs = new HashMap<>();
-        Map<String, NuMLDocument> dataDocs = new HashMap<>();
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            // Gets data entries
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(URIS.numl)) {
-                String dataDocName = entry.getFileName();
-                try {
-                    NuMLDocument dataDoc = CombineArchiveUtil.readData(entry.getPath());
-                    dataDocs.put(dataDocName, dataDoc);
-                } catch (IOException | ParserConfigurationException | SAXException e) {
-                    LOGGER.warning(dataDocName + " could not be read");
-                    e.printStackTrace();
-                }
-            }
-
-            // Classify models into tertiary or secondary models
-
-            Element metaParent = ca.getDescriptions().get(0).getXmlDescription();
-            Set<String> masterFiles = new PMFMetadataNode(metaParent).masterFiles;
-
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String docName = entry.getFileName();
-
-                try {
-                    SBMLDocument doc = CombineArchiveUtil.readModel(entry.getPath());
-                    if (masterFiles.contains(docName)) {
-                        tertDocs.put(docName, doc);
-                    } else {
-                        secDocs.put(docName, doc);
-                    }
-                } catch (IOException | XMLStreamException e) {
-                    LOGGER.warning(docName + " could not be read");
-                    e.printStackTrace();
-                }
-            }
-        } catch (IOException | JDOMException | ParseException error) {
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+    /**
+     * Reads one step tertiary models from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<OneStepTertiaryModel> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getOneStepTertiaryModels();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new CombineArchiveException(e.getMessage());
         }
+    }
 
+    /**
+     * Reads one step tertiary models from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<OneStepTertiaryModel>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getOneStepTertiaryModels);
+    }
 
-        List<OneStepTertiaryModel> models = new ArrayList<>();
-        for (Map.Entry<String, SBMLDocument> entry : tertDocs.entrySet()) {
-            String tertDocName = entry.getKey();
-            SBMLDocument tertDoc = entry.getValue();
-
-            List<String> secModelNames = new ArrayList<>();
-            List<SBMLDocument> secModels = new ArrayList<>();
-
-            // Gets secondary models
-            CompSBMLDocumentPlugin tertPlugin = (CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel);
-            for (ExternalModelDefinition emd : tertPlugin.getListOfExternalModelDefinitions()) {
-                String secModelName = emd.getSource();
-                secModelNames.add(secModelName);
-
-                SBMLDocument secDoc = secDocs.get(secModelName);
-                secModels.add(secDoc);
-            }
-
-            // Gets data files from the tertiary model document
-            List<String> numlDocNames = new ArrayList<>();
-            List<NuMLDocument> numlDocs = new ArrayList<>();
-
-            XMLNode tertAnnot = tertDoc.getModel().getAnnotation().getNonRDFannotation();
-            XMLNode tertAnnotMetadata = tertAnnot.getChildElement("metadata", "");
-            for (XMLNode node : tertAnnotMetadata.getChildElements(DataSourceNode.TAG, "")) {
-                String numlDocName = new DataSourceNode(node).getFile();
-                numlDocNames.add(numlDocName);
-                numlDocs.add(dataDocs.get(numlDocName));
-            }
-
-            models.add(new OneStepTertiaryModel(tertDocName, tertDoc, secModelNames, secModels, numlDocNames,
-                    numlDocs));
-        }
-
-        return models;
+    /**
+     * Reads one step tertiary models from a file one at a time. Faulty models are skipped.
+     * Only the documents of the current model are held in memory, so very large files can be processed. The file
+     * stays open until the stream is closed, so the stream should be used with try-with-resources.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static Stream<OneStepTertiaryModel> stream(Path path) throws CombineArchiveException {
+        return PMFArchive.stream(path, PMFArchive::streamOneStepTertiaryModels);
     }
 
     /**
@@ -351,74 +318,131 @@ public class OneStepTertiaryModelFile {
     /**
      * Writes one step tertiary models to a file. Faulty models are skipped. Existent
      * files are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
-    public static void write(Path path, List<OneStepTertiaryModel> models)
-            throws CombineArchiveException, IOException {
+    public static void write(Path path, List<OneStepTertiaryModel> models) throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
 
+    /**
+     * Writes one step tertiary models to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<OneStepTertiaryModel> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (OneStepTertiaryModel model : models) {
+            submit(buffers, model);
+        }
 
         // Creates COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-            Set<String> masterFiles = new HashSet<>(models.size());
-
-            // Adds models
-            for (OneStepTertiaryModel model : models) {
-                for (int i = 0; i < model.getDataDocs().size(); i++) {
-                    String numlDocName = model.getDataDocNames().get(i);
-                    NuMLDocument numlDoc = model.getDataDocs().get(i);
-
-                    try {
-                        CombineArchiveUtil.writeData(ca, numlDoc, numlDocName);
-                    } catch (IOException | TransformerException | ParserConfigurationException
-                            e) {
-                        LOGGER.warning(numlDocName + " could not be saved");
-                        e.printStackTrace();
-                    }
-                }
+        PMFArchive.write(path, ModelType.ONE_STEP_TERTIARY_MODEL, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model, masterFiles));
+    }
 
-                // Tertiary model
-                try {
-                    ArchiveEntry masterEntry = CombineArchiveUtil.writeModel(ca, model.getTertiaryDoc(), model
-                            .getTertiaryDocName(), modelUri);
-                    masterFiles.add(masterEntry.getPath().getFileName().toString());
-                } catch (IOException | SBMLException | XMLStreamException e) {
-                    LOGGER.warning(model.getTertiaryDocName() + " could not be saved");
-                    e.printStackTrace();
-                    continue;
-                }
+    /**
+     * Writes one step tertiary models to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<OneStepTertiaryModel> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.ONE_STEP_TERTIARY_MODEL, models, executor,
+                OneStepTertiaryModelFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 
-                for (int i = 0; i < model.getSecDocs().size(); i++) {
-                    String secDocName = model.getSecDocNames().get(i);
-                    SBMLDocument secDoc = model.getSecDocs().get(i);
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, OneStepTertiaryModel model) {
+        model.getDataDocs().forEach(buffers::submit);
+        buffers.submit(model.getTertiaryDoc());
+        model.getSecDocs().forEach(buffers::submit);
+    }
 
-                    try {
-                        CombineArchiveUtil.writeModel(ca, secDoc, secDocName, modelUri);
-                    } catch (IOException | SBMLException | XMLStreamException e) {
-                        LOGGER.warning(secDocName + " could not be saved");
-                        e.printStackTrace();
-                    }
-                }
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri,
+                    OneStepTertiaryModel model, Set<String> masterFiles)
+            throws IOException {
+        for (int i = 0; i < model.getDataDocs().size(); i++) {
+            String numlDocName = model.getDataDocNames().get(i);
+            NuMLDocument numlDoc = model.getDataDocs().get(i);
+
+            try {
+                buffers.writeData(ca, numlDoc, numlDocName);
+            } catch (IOException | TransformerException | ParserConfigurationException
+                    e) {
+                LOGGER.warning(numlDocName + " could not be saved");
+                e.printStackTrace();
             }
+        }
 
-            // Adds description with model type
-            Element annot = new PMFMetadataNode(ModelType.ONE_STEP_TERTIARY_MODEL, masterFiles).node;
-            ca.addDescription(new DefaultMetaDataObject(annot));
-
-            CombineArchiveUtil.addReadme(ca);
+        // Tertiary model
+        try {
+            ArchiveEntry masterEntry = buffers.writeModel(ca, model.getTertiaryDoc(), model
+                    .getTertiaryDocName(), modelUri);
+            masterFiles.add(masterEntry.getPath().getFileName().toString());
+        } catch (IOException | SBMLException | XMLStreamException e) {
+            LOGGER.warning(model.getTertiaryDocName() + " could not be saved");
+            e.printStackTrace();
+            return;
+        }
 
-            ca.pack();
+        for (int i = 0; i < model.getSecDocs().size(); i++) {
+            String secDocName = model.getSecDocNames().get(i);
+            SBMLDocument secDoc = model.getSecDocs().get(i);
 
-        } catch (Exception e) {
-            Files.delete(path);  // Remove faulty file
-            e.printStackTrace();
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+            try {
+                buffers.writeModel(ca, secDoc, secDocName, modelUri);
+            } catch (IOException | SBMLException | XMLStreamException e) {
+                LOGGER.warning(secDocName + " could not be saved");
+                e.printStackTrace();
+            }
         }
     }
+
+    /**
+     * Opens a sink for writing one step tertiary models to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<OneStepTertiaryModel> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.ONE_STEP_TERTIARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
+
+    /**
+     * Opens an editor for adding, replacing and removing one step tertiary models in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<OneStepTertiaryModel> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.ONE_STEP_TERTIARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 }
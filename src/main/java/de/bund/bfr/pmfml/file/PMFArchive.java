@@ -0,0 +1,1097 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.model.*;
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import de.bund.bfr.pmfml.sbml.DataSourceNode;
+import de.bund.bfr.pmfml.sbml.PrimaryModelNode;
+import de.unirostock.sems.cbarchive.ArchiveEntry;
+import de.unirostock.sems.cbarchive.CombineArchive;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+import de.unirostock.sems.cbarchive.meta.DefaultMetaDataObject;
+import de.unirostock.sems.cbarchive.meta.MetaDataObject;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.sbml.jsbml.Annotation;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
+import org.sbml.jsbml.xml.XMLNode;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * PMF or PMFX file opened for lazy reading.
+ * <p>
+ * Opening reads only the manifest and the {@link PMFMetadataNode} description. Every NuML and SBML entry is exposed
+ * as a {@link DocumentHandle} which parses its document on first access. The archive stays open until
+ * {@link #close()}, so it should be used with try-with-resources:
+ * <pre>
+ * try (PMFArchive archive = PMFArchive.open(path)) {
+ *     List&lt;TwoStepTertiaryModel&gt; models = archive.load(executor).getTwoStepTertiaryModels();
+ * }
+ * </pre>
+ * <p>
+ * The typed views, such as {@link #getTwoStepTertiaryModels()}, link the documents of every {@link ModelType}: tertiary
+ * models to their secondary models, secondary models to their primary models and primary models to their data. They
+ * parse only the documents they need, so {@link #load(Executor)} may be called before to parse everything in
+ * parallel. Documents that cannot be read are logged and the models using them are skipped or get null documents,
+ * as in the *ModelFile readers.
+ * <p>
+ * Documents are taken from the {@link DocumentCache#getShared() shared cache} if there is one.
+ * <p>
+ * With {@link ReadOptions#setMemoryMapped(boolean) memory mapping} on, stored entries, e.g. those written with
+ * {@link CompressionStrategy#FASTEST_READ}, are parsed straight from a mapping of the file. Deflated entries are still
+ * inflated through the zip file system. The mapping is released when the archive is closed.
+ * <p>
+ * Tertiary models can also be streamed one at a time, e.g. {@link #streamTwoStepTertiaryModels()}, without keeping
+ * their documents in the handles.
+ * <p>
+ * Executors, given to {@link #load(Executor)} or through {@link ReadOptions} and {@link WriteOptions} to the *ModelFile
+ * readers and writers, run every document as an independent parsing or serialization task, e.g. on a
+ * {@link java.util.concurrent.ForkJoinPool}. <code>Runnable::run</code>, the default, runs them one by one in the
+ * calling thread. No task waits for another, so any executor can be used, even one with a single thread. The writers
+ * still add the documents in the order of the models, from the calling thread, so the file does not depend on the
+ * executor.
+ */
+public class PMFArchive implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger("PMFArchive");
+
+    private final Path path;
+    private final CombineArchive archive;
+    // Null if the archive is not mapped
+    private final MappedArchive mappedArchive;
+
+    private final ModelType modelType;
+    private final Set<String> masterFiles;
+
+    private final Map<String, DocumentHandle<NuMLDocument>> dataDocuments;
+    private final Map<String, DocumentHandle<SBMLDocument>> modelDocuments;
+
+    // Names of all the documents, whatever the projection
+    private final List<String> dataDocumentNames;
+    private final Map<String, Path> modelEntryPaths;
+
+    private PMFArchive(final Path path, final CombineArchive archive, final MappedArchive mappedArchive,
+                       final Projection projection, final ReadOptions options) {
+        this.path = path;
+        this.archive = archive;
+        this.mappedArchive = mappedArchive;
+
+        final List<MetaDataObject> descriptions = archive.getDescriptions();
+        if (descriptions.isEmpty()) {
+            modelType = null;
+            masterFiles = Collections.emptySet();
+        } else {
+            final PMFMetadataNode metadataNode = new PMFMetadataNode(descriptions.get(0).getXmlDescription());
+            modelType = metadataNode.modelType;
+            masterFiles = Collections.unmodifiableSet(metadataNode.masterFiles);
+        }
+
+        CombineArchiveUtil.EntryReader<NuMLDocument> dataReader = CombineArchiveUtil::readData;
+        CombineArchiveUtil.EntryReader<SBMLDocument> modelReader = CombineArchiveUtil::readModel;
+        if (mappedArchive != null) {
+            dataReader = mapped(mappedArchive, dataReader, CombineArchiveUtil::readData);
+            modelReader = mapped(mappedArchive, modelReader, CombineArchiveUtil::readModel);
+        }
+        final DocumentCache cache = DocumentCache.getShared();
+        if (cache != null) {
+            dataReader = cache.wrap(path, dataReader, DocumentCache::copy);
+            modelReader = cache.wrap(path, modelReader, DocumentCache::copy);
+        }
+        dataReader = track(dataReader, options.getListener(), options.getToken());
+        modelReader = track(modelReader, options.getListener(), options.getToken());
+
+        final List<ArchiveEntry> dataEntries = archive.getEntriesWithFormat(URIS.numl);
+        final List<ArchiveEntry> modelEntries = archive.getEntriesWithFormat(CombineArchiveUtil.getModelURI(path));
+
+        dataDocumentNames = new ArrayList<>(dataEntries.size());
+        dataEntries.forEach(entry -> dataDocumentNames.add(entry.getFileName()));
+        modelEntryPaths = new LinkedHashMap<>();
+        modelEntries.forEach(entry -> modelEntryPaths.put(entry.getFileName(), entry.getPath()));
+
+        // Documents out of the projection get no handles, so they cannot be parsed
+        dataDocuments = createHandles(projection == Projection.METADATA ? Collections.emptyList() : dataEntries,
+                dataReader);
+        modelDocuments = createHandles(projection == Projection.ALL ? modelEntries : Collections.emptyList(),
+                modelReader);
+    }
+
+    private static <T> Map<String, DocumentHandle<T>> createHandles(final List<ArchiveEntry> entries,
+                                                                    final CombineArchiveUtil.EntryReader<T> reader) {
+        final Map<String, DocumentHandle<T>> handles = new LinkedHashMap<>();
+        for (final ArchiveEntry entry : entries) {
+            handles.put(entry.getFileName(), new DocumentHandle<>(entry.getFileName(), entry.getPath(), reader));
+        }
+        return Collections.unmodifiableMap(handles);
+    }
+
+    /**
+     * @return the mapped archive, or null if the file could not be mapped
+     */
+    private static MappedArchive map(final Path path) {
+        try {
+            return MappedArchive.map(path);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, path.getFileName() + " could not be mapped", e);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a document from an input stream.
+     */
+    @FunctionalInterface
+    private interface StreamReader<T> {
+        T read(InputStream is) throws Exception;
+    }
+
+    /**
+     * Reads stored entries from a mapped archive with <code>streamReader</code> and the rest with <code>reader</code>.
+     */
+    private static <T> CombineArchiveUtil.EntryReader<T> mapped(final MappedArchive mappedArchive,
+                                                                final CombineArchiveUtil.EntryReader<T> reader,
+                                                                final StreamReader<T> streamReader) {
+        return entryPath -> {
+            // Entry paths are absolute, e.g. "/data0.numl", and zip entry names are relative
+            try (InputStream is = mappedArchive.open(entryPath.toString().substring(1))) {
+                return is == null ? reader.read(entryPath) : streamReader.read(is);
+            }
+        };
+    }
+
+    /**
+     * Reports the entries parsed to a listener and checks a cancellation token before parsing each one.
+     */
+    private static <T> CombineArchiveUtil.EntryReader<T> track(final CombineArchiveUtil.EntryReader<T> reader,
+                                                               final ProgressListener listener,
+                                                               final CancellationToken token) {
+        return entryPath -> {
+            token.throwIfCancelled();
+
+            final String entryName = entryPath.getFileName().toString();
+            long size;
+            try {
+                size = Files.size(entryPath);
+            } catch (IOException e) {
+                size = -1;
+            }
+
+            listener.entryStarted(entryName, size);
+            final long start = System.nanoTime();
+            boolean successful = false;
+            try {
+                final T doc = reader.read(entryPath);
+                successful = true;
+                return doc;
+            } finally {
+                listener.entryFinished(entryName, size, System.nanoTime() - start, successful);
+            }
+        };
+    }
+
+    /**
+     * Opens a PMF or PMFX file. No document is parsed.
+     *
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static PMFArchive open(final Path path) throws CombineArchiveException {
+        return open(path, Projection.ALL);
+    }
+
+    /**
+     * Opens a PMF or PMFX file for parsing only the documents in <code>projection</code>. No document is parsed.
+     *
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static PMFArchive open(final Path path, final Projection projection) throws CombineArchiveException {
+        return open(path, projection, new ReadOptions());
+    }
+
+    /**
+     * Opens a PMF or PMFX file. No document is parsed.
+     *
+     * @param options listener, cancellation token and memory mapping of the reads
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static PMFArchive open(final Path path, final ReadOptions options) throws CombineArchiveException {
+        return open(path, Projection.ALL, options);
+    }
+
+    /**
+     * Opens a PMF or PMFX file for parsing only the documents in <code>projection</code>. No document is parsed.
+     *
+     * @param options listener, cancellation token and memory mapping of the reads
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static PMFArchive open(final Path path, final Projection projection, final ReadOptions options)
+            throws CombineArchiveException {
+        // Checks the extension before opening the archive
+        CombineArchiveUtil.getModelURI(path);
+
+        final CombineArchive archive;
+        try {
+            archive = new CombineArchive(path.toFile());
+        } catch (IOException | JDOMException | ParseException e) {
+            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+        }
+
+        final MappedArchive mappedArchive = options.isMemoryMapped() ? map(path) : null;
+        try {
+            return new PMFArchive(path, archive, mappedArchive, projection, options);
+        } catch (RuntimeException e) {
+            if (mappedArchive != null) {
+                mappedArchive.close();
+            }
+            try {
+                archive.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the model type, the master files and the number of entries of a PMF or PMFX file. Only the zip central
+     * directory, the manifest and the metadata are read; SBML and NuML entries are not touched.
+     *
+     * @throws CombineArchiveException if the file is not a valid CombineArchive
+     */
+    public static PMFArchiveInfo probe(final Path path) throws CombineArchiveException {
+        return PMFArchiveInfo.read(path);
+    }
+
+    /**
+     * Parses every document not parsed yet, each as an independent task on <code>executor</code>, and waits for all
+     * of them. Documents that cannot be read are left failed in their handles.
+     *
+     * @param executor executor for parsing the documents, see {@link PMFArchive}
+     * @return this archive
+     */
+    public PMFArchive load(final Executor executor) {
+        try {
+            startLoading(executor, () -> false).join();
+        } catch (CompletionException e) {
+            throw rethrowUnchecked(e);
+        }
+        return this;
+    }
+
+    /**
+     * Parses every document not parsed yet, each as an independent task on <code>executor</code>, without waiting.
+     * Cancelling the returned future skips the documents not started yet; documents being parsed are completed.
+     *
+     * @return future completed with this archive once every document is parsed or failed
+     */
+    public CompletableFuture<PMFArchive> loadAsync(final Executor executor) {
+        final CompletableFuture<PMFArchive> loaded = new CompletableFuture<>();
+        startLoading(executor, loaded::isDone).whenComplete((ignored, error) -> {
+            if (error == null) {
+                loaded.complete(this);
+            } else {
+                loaded.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * Submits a task for every document not parsed yet.
+     *
+     * @param cancelled checked by every task before parsing its document
+     * @return future completed when every task is done. It completes exceptionally with the unchecked exceptions of
+     * the parsers.
+     */
+    private CompletableFuture<Void> startLoading(final Executor executor, final BooleanSupplier cancelled) {
+        final List<DocumentHandle<?>> handles = new ArrayList<>(dataDocuments.size() + modelDocuments.size());
+        handles.addAll(dataDocuments.values());
+        handles.addAll(modelDocuments.values());
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(handles.size());
+        for (final DocumentHandle<?> handle : handles) {
+            if (handle.isLoaded() || handle.isFailed()) {
+                continue;
+            }
+            futures.add(CompletableFuture.runAsync(() -> {
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                try {
+                    handle.get();
+                } catch (IOException e) {
+                    // Kept in the handle and reported by the views
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Rethrows the unchecked cause of a failed task, as in a sequential loop.
+     */
+    private static RuntimeException rethrowUnchecked(final CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+        }
+        throw e;
+    }
+
+    /**
+     * Opens a PMF or PMFX file, parses its documents and gets one of its views, all on <code>executor</code>. The
+     * archive is closed when all its tasks are done. Cancelling the returned future skips the documents not started
+     * yet.
+     *
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * archive could not be opened
+     */
+    static <M> CompletableFuture<List<M>> readAsync(final Path path, final Executor executor,
+                                                    final Function<PMFArchive, List<M>> view) {
+        final CompletableFuture<List<M>> result = new CompletableFuture<>();
+
+        CompletableFuture.runAsync(() -> {
+            if (result.isDone()) {
+                return;
+            }
+
+            final PMFArchive archive;
+            try {
+                archive = open(path);
+            } catch (CombineArchiveException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            archive.startLoading(executor, result::isDone).whenComplete((ignored, error) -> {
+                try {
+                    if (error != null) {
+                        result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                    } else if (!result.isDone()) {
+                        result.complete(view.apply(archive));
+                    }
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    try {
+                        archive.close();
+                    } catch (IOException e) {
+                        LOGGER.warning(path.getFileName() + " could not be closed");
+                    }
+                }
+            });
+        }, executor);
+
+        return result;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return model type from the archive description or null if the archive has no description
+     */
+    public ModelType getModelType() {
+        return modelType;
+    }
+
+    /**
+     * @return names of the master files from the archive description
+     */
+    public Set<String> getMasterFiles() {
+        return masterFiles;
+    }
+
+    /**
+     * @return handles to the NuML documents, in the order of the archive entries
+     */
+    public Collection<DocumentHandle<NuMLDocument>> getDataDocuments() {
+        return dataDocuments.values();
+    }
+
+    /**
+     * @return handles to the SBML documents, in the order of the archive entries
+     */
+    public Collection<DocumentHandle<SBMLDocument>> getModelDocuments() {
+        return modelDocuments.values();
+    }
+
+    /**
+     * @return handle to the NuML document with the given file name or null if there is none
+     */
+    public DocumentHandle<NuMLDocument> getDataDocument(final String name) {
+        return dataDocuments.get(name);
+    }
+
+    /**
+     * @return handle to the SBML document with the given file name or null if there is none
+     */
+    public DocumentHandle<SBMLDocument> getModelDocument(final String name) {
+        return modelDocuments.get(name);
+    }
+
+    /**
+     * @return names of all the NuML documents, in the order of the archive entries, even if they are out of the
+     * projection
+     */
+    public List<String> getDataDocumentNames() {
+        return Collections.unmodifiableList(dataDocumentNames);
+    }
+
+    /**
+     * @return names of all the SBML documents, in the order of the archive entries, even if they are out of the
+     * projection
+     */
+    public List<String> getModelDocumentNames() {
+        return Collections.unmodifiableList(new ArrayList<>(modelEntryPaths.keySet()));
+    }
+
+    /**
+     * Links the SBML documents to their data. The data source annotations are scanned without parsing the SBML
+     * documents, so it works with every projection. Documents that cannot be read are logged and skipped.
+     *
+     * @return names of the NuML documents referred by every SBML document, in the order of the archive entries.
+     * Models without data get empty lists.
+     */
+    public Map<String, List<String>> getDataSources() {
+        final Map<String, List<String>> dataSources = new LinkedHashMap<>();
+        for (final Map.Entry<String, Path> entry : modelEntryPaths.entrySet()) {
+            try {
+                dataSources.put(entry.getKey(), CombineArchiveUtil.readDataSources(entry.getValue()));
+            } catch (IOException | XMLStreamException e) {
+                LOGGER.warning(entry.getKey() + " could not be read");
+                e.printStackTrace();
+            }
+        }
+        return dataSources;
+    }
+
+    // Typed views
+
+    /**
+     * @return every NuML document as {@link ExperimentalData}
+     */
+    public List<ExperimentalData> getExperimentalData() {
+        final List<ExperimentalData> dataRecords = new ArrayList<>();
+        for (final DocumentHandle<NuMLDocument> handle : dataDocuments.values()) {
+            final NuMLDocument doc = getDocument(handle);
+            if (doc != null) {
+                dataRecords.add(new ExperimentalData(handle.getName(), doc));
+            }
+        }
+        return dataRecords;
+    }
+
+    /**
+     * @return every SBML document with its data, from the data source annotation. Models without data are skipped.
+     */
+    public List<PrimaryModelWData> getPrimaryModelsWData() {
+        final List<PrimaryModelWData> models = new ArrayList<>();
+        for (final DocumentHandle<SBMLDocument> handle : modelDocuments.values()) {
+            final PrimaryModelWData model = getPrimaryModelWData(handle.getName());
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * @return every SBML document as {@link PrimaryModelWOData}
+     */
+    public List<PrimaryModelWOData> getPrimaryModelsWOData() {
+        final List<PrimaryModelWOData> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(null).entrySet()) {
+            models.add(new PrimaryModelWOData(entry.getKey(), entry.getValue()));
+        }
+        return models;
+    }
+
+    /**
+     * @return every master file with its primary models, from the primary model annotations
+     */
+    public List<TwoStepSecondaryModel> getTwoStepSecondaryModels() {
+        final List<TwoStepSecondaryModel> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(true).entrySet()) {
+            final TwoStepSecondaryModel model = linkTwoStepSecondaryModel(entry.getKey(), entry.getValue());
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * @return every SBML document with the data from the data source annotations of its model definition
+     */
+    public List<OneStepSecondaryModel> getOneStepSecondaryModels() {
+        final List<OneStepSecondaryModel> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(null).entrySet()) {
+            final SBMLDocument modelDoc = entry.getValue();
+
+            // Looks for DataSourceNode
+            final CompSBMLDocumentPlugin plugin = (CompSBMLDocumentPlugin) modelDoc.getPlugin(CompConstants
+                    .shortLabel);
+            final XMLNode metadata = plugin.getModelDefinition(0).getAnnotation().getNonRDFannotation()
+                    .getChildElement("metadata", "");
+
+            final List<String> dataDocNames = new ArrayList<>();
+            final List<NuMLDocument> dataDocs = new ArrayList<>();
+            for (final XMLNode node : metadata.getChildElements("dataSource", "")) {
+                final String dataDocName = new DataSourceNode(node).getFile();
+                dataDocNames.add(dataDocName);
+                dataDocs.add(getData(dataDocName));
+            }
+
+            models.add(new OneStepSecondaryModel(entry.getKey(), modelDoc, dataDocNames, dataDocs));
+        }
+        return models;
+    }
+
+    /**
+     * @return every SBML document as {@link ManualSecondaryModel}
+     */
+    public List<ManualSecondaryModel> getManualSecondaryModels() {
+        final List<ManualSecondaryModel> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(null).entrySet()) {
+            models.add(new ManualSecondaryModel(entry.getKey(), entry.getValue()));
+        }
+        return models;
+    }
+
+    /**
+     * @return every master file with its secondary models and the primary models of its first secondary model
+     */
+    public List<TwoStepTertiaryModel> getTwoStepTertiaryModels() {
+        final List<TwoStepTertiaryModel> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(true).entrySet()) {
+            final TwoStepTertiaryModel model = linkTwoStepTertiaryModel(entry.getKey(), entry.getValue(), true);
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * @return every master file with its secondary models and the data from its data source annotations
+     */
+    public List<OneStepTertiaryModel> getOneStepTertiaryModels() {
+        final List<OneStepTertiaryModel> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(true).entrySet()) {
+            final OneStepTertiaryModel model = linkOneStepTertiaryModel(entry.getKey(), entry.getValue(), true);
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * @return every master file with its secondary models
+     */
+    public List<ManualTertiaryModel> getManualTertiaryModels() {
+        final List<ManualTertiaryModel> models = new ArrayList<>();
+        for (final Map.Entry<String, SBMLDocument> entry : getModelEntries(true).entrySet()) {
+            final ManualTertiaryModel model = linkManualTertiaryModel(entry.getKey(), entry.getValue(), true);
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Gets the view of a model type, e.g. {@link #getTwoStepTertiaryModels()} for
+     * {@link ModelType#TWO_STEP_TERTIARY_MODEL}.
+     *
+     * @return models of the type
+     */
+    public List<?> getModels(final ModelType type) {
+        switch (type) {
+            case EXPERIMENTAL_DATA:
+                return getExperimentalData();
+            case PRIMARY_MODEL_WDATA:
+                return getPrimaryModelsWData();
+            case PRIMARY_MODEL_WODATA:
+                return getPrimaryModelsWOData();
+            case TWO_STEP_SECONDARY_MODEL:
+                return getTwoStepSecondaryModels();
+            case ONE_STEP_SECONDARY_MODEL:
+                return getOneStepSecondaryModels();
+            case MANUAL_SECONDARY_MODEL:
+                return getManualSecondaryModels();
+            case TWO_STEP_TERTIARY_MODEL:
+                return getTwoStepTertiaryModels();
+            case ONE_STEP_TERTIARY_MODEL:
+                return getOneStepTertiaryModels();
+            case MANUAL_TERTIARY_MODEL:
+                return getManualTertiaryModels();
+            default:
+                throw new IllegalArgumentException("Unknown model type: " + type);
+        }
+    }
+
+    // Streams
+
+    /**
+     * Streams the models of {@link #getTwoStepTertiaryModels()} one at a time. Every model resolves only its own
+     * secondary, primary and data documents, which are not kept by the archive, so the memory needed is that of the
+     * largest model instead of the whole archive. The archive must stay open while the stream is consumed.
+     */
+    public Stream<TwoStepTertiaryModel> streamTwoStepTertiaryModels() {
+        return streamMasterFiles((name, doc) -> linkTwoStepTertiaryModel(name, doc, false));
+    }
+
+    /**
+     * Streams the models of {@link #getOneStepTertiaryModels()} one at a time, like
+     * {@link #streamTwoStepTertiaryModels()}.
+     */
+    public Stream<OneStepTertiaryModel> streamOneStepTertiaryModels() {
+        return streamMasterFiles((name, doc) -> linkOneStepTertiaryModel(name, doc, false));
+    }
+
+    /**
+     * Streams the models of {@link #getManualTertiaryModels()} one at a time, like
+     * {@link #streamTwoStepTertiaryModels()}.
+     */
+    public Stream<ManualTertiaryModel> streamManualTertiaryModels() {
+        return streamMasterFiles((name, doc) -> linkManualTertiaryModel(name, doc, false));
+    }
+
+    /**
+     * Lazily links the master files that can be read, in the order of the entries.
+     */
+    private <M> Stream<M> streamMasterFiles(final BiFunction<String, SBMLDocument, M> linker) {
+        return modelDocuments.values().stream()
+                .filter(handle -> masterFiles.contains(handle.getName()))
+                .map(handle -> {
+                    final SBMLDocument doc = getDocument(handle, false);
+                    return doc == null ? null : linker.apply(handle.getName(), doc);
+                })
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Opens a PMF or PMFX file and streams one of its views. The file is closed with the stream, so the stream should
+     * be used with try-with-resources.
+     *
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    static <M> Stream<M> stream(final Path path, final Function<PMFArchive, Stream<M>> view)
+            throws CombineArchiveException {
+        final PMFArchive archive = open(path);
+        return view.apply(archive).onClose(() -> {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Linking
+
+    /**
+     * Links a primary model with its data through the data source annotation.
+     *
+     * @return null if the model or its data could not be read
+     */
+    PrimaryModelWData getPrimaryModelWData(final String modelDocName) {
+        final SBMLDocument modelDoc = getModel(modelDocName);
+        if (modelDoc == null) {
+            return null;
+        }
+
+        final String dataDocName = getDataDocName(modelDoc);
+        if (dataDocName == null) {
+            LOGGER.warning(modelDocName + ": Missing data. Skipping entry");
+            return null;
+        }
+
+        final NuMLDocument dataDoc = getData(dataDocName);
+        if (dataDoc == null) {
+            LOGGER.warning(dataDocName + ": could not be retrieved. Skipping entry.");
+            return null;
+        }
+
+        return new PrimaryModelWData(modelDocName, modelDoc, dataDocName, dataDoc);
+    }
+
+    /**
+     * Links a secondary model with the primary models of its primary model annotations. Primary models without data
+     * source annotation are left out.
+     *
+     * @return null if a primary model could not be read
+     */
+    private TwoStepSecondaryModel linkTwoStepSecondaryModel(final String secDocName, final SBMLDocument secDoc) {
+        final XMLNode metadata = getMetadata(secDoc);
+        if (metadata == null) {
+            return null;
+        }
+
+        final List<XMLNode> refs = metadata.getChildElements(PrimaryModelNode.TAG, "");
+        final List<PrimaryModelWData> primModels = new ArrayList<>(refs.size());
+        for (final XMLNode ref : refs) {
+            final String primModelName = ref.getChild(0).getCharacters();
+            final SBMLDocument primModelDoc = getModel(primModelName);
+            if (primModelDoc == null) {
+                LOGGER.warning(primModelName + ": could not be retrieved. Skipping " + secDocName);
+                return null;
+            }
+
+            // Looks for DataSourceNode
+            final String dataDocName = getDataDocName(primModelDoc);
+            if (dataDocName == null) {
+                continue;
+            }
+            primModels.add(new PrimaryModelWData(primModelName, primModelDoc, dataDocName, getData(dataDocName)));
+        }
+
+        return new TwoStepSecondaryModel(secDocName, secDoc, primModels);
+    }
+
+    /**
+     * @param memoize whether the linked documents are kept by their handles
+     * @return null if a secondary, primary or data document could not be read
+     */
+    private TwoStepTertiaryModel linkTwoStepTertiaryModel(final String tertDocName, final SBMLDocument tertDoc,
+                                                          final boolean memoize) {
+        final List<String> secDocNames = getSecDocNames(tertDoc);
+        final List<SBMLDocument> secDocs = getModels(tertDocName, secDocNames, memoize);
+        if (secDocs == null) {
+            return null;
+        }
+
+        /*
+         * All the secondary models of a two step tertiary model are linked to the same primary models. Thus
+         * these primary models can be retrieved from the first secondary model.
+         */
+        final XMLNode metadata = secDocs.isEmpty() ? null : getMetadata(secDocs.get(0));
+        if (metadata == null) {
+            LOGGER.warning(tertDocName + ": Missing primary models. Skipping entry");
+            return null;
+        }
+
+        final List<PrimaryModelWData> primModels = new ArrayList<>();
+        for (final XMLNode pmNode : metadata.getChildElements(PrimaryModelNode.TAG, "")) {
+            // Gets model name from annotation
+            final String primDocName = pmNode.getChild(0).getCharacters();
+            final SBMLDocument primDoc = getModel(primDocName, memoize);
+            if (primDoc == null) {
+                LOGGER.warning(primDocName + ": could not be retrieved. Skipping " + tertDocName);
+                return null;
+            }
+
+            // Gets data name from the data source annotation of the primary model
+            final String dataDocName = getDataDocName(primDoc);
+            final NuMLDocument dataDoc = dataDocName == null ? null : getData(dataDocName, memoize);
+            if (dataDoc == null) {
+                LOGGER.warning(primDocName + ": Missing data. Skipping " + tertDocName);
+                return null;
+            }
+
+            primModels.add(new PrimaryModelWData(primDocName, primDoc, dataDocName, dataDoc));
+        }
+
+        return new TwoStepTertiaryModel(tertDocName, tertDoc, primModels, secDocNames, secDocs);
+    }
+
+    /**
+     * @return null if a secondary document could not be read
+     */
+    private OneStepTertiaryModel linkOneStepTertiaryModel(final String tertDocName, final SBMLDocument tertDoc,
+                                                          final boolean memoize) {
+        final List<String> secDocNames = getSecDocNames(tertDoc);
+        final List<SBMLDocument> secDocs = getModels(tertDocName, secDocNames, memoize);
+        final XMLNode metadata = getMetadata(tertDoc);
+        if (secDocs == null || metadata == null) {
+            return null;
+        }
+
+        // Gets data files from the tertiary model document
+        final List<String> dataDocNames = new ArrayList<>();
+        final List<NuMLDocument> dataDocs = new ArrayList<>();
+        for (final XMLNode node : metadata.getChildElements(DataSourceNode.TAG, "")) {
+            final String dataDocName = new DataSourceNode(node).getFile();
+            dataDocNames.add(dataDocName);
+            dataDocs.add(getData(dataDocName, memoize));
+        }
+
+        return new OneStepTertiaryModel(tertDocName, tertDoc, secDocNames, secDocs, dataDocNames, dataDocs);
+    }
+
+    /**
+     * @return null if a secondary document could not be read
+     */
+    private ManualTertiaryModel linkManualTertiaryModel(final String tertDocName, final SBMLDocument tertDoc,
+                                                        final boolean memoize) {
+        final List<String> secDocNames = getSecDocNames(tertDoc);
+        final List<SBMLDocument> secDocs = getModels(tertDocName, secDocNames, memoize);
+        return secDocs == null ? null : new ManualTertiaryModel(tertDocName, tertDoc, secDocNames, secDocs);
+    }
+
+    /**
+     * @return names of the secondary models linked to a tertiary model through its external model definitions
+     */
+    private static List<String> getSecDocNames(final SBMLDocument tertDoc) {
+        final CompSBMLDocumentPlugin plugin = (CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel);
+        final List<String> secDocNames = new ArrayList<>();
+        for (final ExternalModelDefinition emd : plugin.getListOfExternalModelDefinitions()) {
+            secDocNames.add(emd.getSource());
+        }
+        return secDocNames;
+    }
+
+    /**
+     * @return the metadata annotation of a document or null if it has none
+     */
+    private static XMLNode getMetadata(final SBMLDocument doc) {
+        if (!doc.isSetModel() || !doc.getModel().isSetAnnotation()) {
+            return null;
+        }
+        final Annotation annotation = doc.getModel().getAnnotation();
+        return annotation.isSetNonRDFannotation() ? annotation.getNonRDFannotation().getChildElement("metadata", "")
+                : null;
+    }
+
+    /**
+     * @return name of the data document from the data source annotation of a primary model or null if it has none
+     */
+    private static String getDataDocName(final SBMLDocument primDoc) {
+        final XMLNode metadata = getMetadata(primDoc);
+        final XMLNode dataSourceNode = metadata == null ? null : metadata.getChildElement("dataSource", "");
+        return dataSourceNode == null ? null : new DataSourceNode(dataSourceNode).getFile();
+    }
+
+    /**
+     * Gets the documents that could be read, in the order of the entries.
+     *
+     * @param master true for master files only, false for the rest and null for all the documents
+     */
+    LinkedHashMap<String, SBMLDocument> getModelEntries(final Boolean master) {
+        final LinkedHashMap<String, SBMLDocument> docs = new LinkedHashMap<>();
+        for (final DocumentHandle<SBMLDocument> handle : modelDocuments.values()) {
+            if (master != null && master != masterFiles.contains(handle.getName())) {
+                continue;
+            }
+            final SBMLDocument doc = getDocument(handle);
+            if (doc != null) {
+                docs.put(handle.getName(), doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * @return the documents in the order of the names or null if one of them could not be read
+     */
+    private List<SBMLDocument> getModels(final String tertDocName, final List<String> names, final boolean memoize) {
+        final List<SBMLDocument> docs = new ArrayList<>(names.size());
+        for (final String name : names) {
+            final SBMLDocument doc = getModel(name, memoize);
+            if (doc == null) {
+                LOGGER.warning(name + ": could not be retrieved. Skipping " + tertDocName);
+                return null;
+            }
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    /**
+     * @return the SBML document with the given name or null if it is missing or cannot be read
+     */
+    SBMLDocument getModel(final String name) {
+        return getModel(name, true);
+    }
+
+    private SBMLDocument getModel(final String name, final boolean memoize) {
+        final DocumentHandle<SBMLDocument> handle = modelDocuments.get(name);
+        return handle == null ? null : getDocument(handle, memoize);
+    }
+
+    /**
+     * @return the NuML document with the given name or null if it is missing or cannot be read
+     */
+    NuMLDocument getData(final String name) {
+        return getData(name, true);
+    }
+
+    private NuMLDocument getData(final String name, final boolean memoize) {
+        final DocumentHandle<NuMLDocument> handle = dataDocuments.get(name);
+        return handle == null ? null : getDocument(handle, memoize);
+    }
+
+    private static <T> T getDocument(final DocumentHandle<T> handle) {
+        return getDocument(handle, true);
+    }
+
+    /**
+     * @param memoize whether the document is kept by its handle, see {@link DocumentHandle#read()}
+     * @return the document or null if it cannot be read
+     */
+    private static <T> T getDocument(final DocumentHandle<T> handle, final boolean memoize) {
+        try {
+            return memoize ? handle.get() : handle.read();
+        } catch (IOException e) {
+            LOGGER.warning(handle.getName() + " could not be read");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Closes the archive. Documents already parsed stay available through their handles.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            archive.close();
+        } finally {
+            if (mappedArchive != null) {
+                mappedArchive.close();
+            }
+        }
+    }
+
+    // Writing
+
+    /**
+     * Writes a new PMF or PMFX file: the entries added by <code>writer</code> for every model, the
+     * {@link PMFMetadataNode} description with the model type and the master files, and the readme. Existent files
+     * are overwritten and faulty files are removed.
+     * <p>
+     * The writers may serialize the documents in parallel but <code>writer</code> adds them in the order of the
+     * models, from the calling thread, so the file is the same whatever executor serialized them. With a compression
+     * other than the default one the file is written through a {@link ModelSink}, which compresses every entry as it
+     * is written.
+     *
+     * @param buffers buffers the documents of the models were submitted to
+     * @throws CombineArchiveException if the archive could not be written
+     * @throws CancellationException   if the token of <code>buffers</code> was cancelled. The file is removed too.
+     */
+    static <M> void write(final Path path, final ModelType modelType, final List<M> models,
+                          final DocumentBuffers buffers, final CompressionStrategy compression,
+                          final ModelSink.ModelWriter<M> writer) throws CombineArchiveException, IOException {
+
+        if (!compression.isDefault()) {
+            try (ModelSink<M> sink = ModelSink.open(path, modelType, writer, buffers, compression)) {
+                for (final M model : models) {
+                    sink.accept(model);
+                }
+            }
+            return;
+        }
+
+        // Remove if existent file
+        Files.deleteIfExists(path);
+
+        // Creates COMBINE archive
+        try (CombineArchive ca = new CombineArchive(path.toFile())) {
+            final Set<String> masterFiles = new HashSet<>();
+            for (final M model : models) {
+                writer.add(ca, buffers, model, masterFiles);
+            }
+            finish(ca, modelType, masterFiles);
+        } catch (Exception e) {
+            Files.deleteIfExists(path);  // Removes faulty file
+            if (e instanceof CancellationException) {
+                throw (CancellationException) e;
+            }
+            e.printStackTrace();
+            throw new CombineArchiveException(path.getFileName() + " could not be written");
+        }
+    }
+
+    /**
+     * Writes a new PMF or PMFX file like {@link #write(Path, ModelType, List, DocumentBuffers, CompressionStrategy,
+     * ModelSink.ModelWriter)} without blocking: the documents are serialized on <code>executor</code> and the archive
+     * is assembled on it once all of them are done. No task waits for another, so any executor can be used, even one
+     * with a single thread.
+     *
+     * @param submitter submits the documents of a model
+     * @param writers   creates the writer of the models for the model URI of <code>path</code>
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException}
+     */
+    static <M> CompletableFuture<Void> writeAsync(final Path path, final ModelType modelType, final List<M> models,
+                                                  final Executor executor,
+                                                  final BiConsumer<DocumentBuffers, M> submitter,
+                                                  final Function<URI, ModelSink.ModelWriter<M>> writers) {
+        final ModelSink.ModelWriter<M> writer = writers.apply(CombineArchiveUtil.getModelURI(path));
+
+        final DocumentBuffers buffers = new DocumentBuffers(executor);
+        for (final M model : models) {
+            submitter.accept(buffers, model);
+        }
+
+        return buffers.whenSerialized().thenRunAsync(() -> {
+            try {
+                write(path, modelType, models, buffers, CompressionStrategy.DEFAULT, writer);
+            } catch (CombineArchiveException | IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Adds the {@link PMFMetadataNode} description with the model type and the master files and the readme, if
+     * missing, and packs the archive.
+     */
+    static void finish(final CombineArchive ca, final ModelType modelType, final Set<String> masterFiles)
+            throws IOException, TransformerException {
+        // Adds description with model type
+        final Element annot = new PMFMetadataNode(modelType, masterFiles).node;
+        ca.addDescription(new DefaultMetaDataObject(annot));
+
+        // Edited archives have already a readme
+        if (ca.getEntry("readme.txt") == null) {
+            CombineArchiveUtil.addReadme(ca);
+        }
+
+        ca.pack();
+    }
+}
@@ -0,0 +1,180 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Summary of a PMF or PMFX file: model type, master files and number of entries. It is read from the zip central
+ * directory, the manifest and the metadata files without touching the SBML and NuML entries. Use
+ * {@link PMFArchive#probe(Path)} to get one.
+ */
+public class PMFArchiveInfo {
+
+    private static final String MANIFEST = "manifest.xml";
+    private static final String METADATA_FORMAT = "http://identifiers.org/combine.specifications/omex-metadata";
+    private static final Namespace RDF_NS =
+            Namespace.getNamespace("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+
+    private final ModelType modelType;
+    private final Set<String> masterFiles;
+    private final int numEntries;
+    private final int numDataEntries;
+    private final int numModelEntries;
+
+    private PMFArchiveInfo(final ModelType modelType, final Set<String> masterFiles, final int numEntries,
+                           final int numDataEntries, final int numModelEntries) {
+        this.modelType = modelType;
+        this.masterFiles = Collections.unmodifiableSet(masterFiles);
+        this.numEntries = numEntries;
+        this.numDataEntries = numDataEntries;
+        this.numModelEntries = numModelEntries;
+    }
+
+    static PMFArchiveInfo read(final Path path) throws CombineArchiveException {
+        final URI modelUri = CombineArchiveUtil.getModelURI(path);
+
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            final ZipEntry manifestEntry = zipFile.getEntry(MANIFEST);
+            if (manifestEntry == null) {
+                throw new CombineArchiveException(path.getFileName() + " has no manifest");
+            }
+
+            // Counts entries by format and collects the metadata files
+            int numDataEntries = 0;
+            int numModelEntries = 0;
+            final List<String> metadataFiles = new ArrayList<>();
+
+            final Element manifest = parse(zipFile, manifestEntry).getRootElement();
+            for (final Element content : manifest.getChildren("content", manifest.getNamespace())) {
+                final String format = content.getAttributeValue("format");
+                final String location = content.getAttributeValue("location");
+                if (URIS.numl.toString().equals(format)) {
+                    numDataEntries++;
+                } else if (modelUri.toString().equals(format)) {
+                    numModelEntries++;
+                } else if (METADATA_FORMAT.equals(format)) {
+                    metadataFiles.add(location);
+                }
+            }
+
+            // Looks for the PMFMetadataNode in the description of the archive
+            ModelType modelType = null;
+            final Set<String> masterFiles = new LinkedHashSet<>();
+            for (final String metadataFile : metadataFiles) {
+                final ZipEntry metadataEntry = zipFile.getEntry(stripLocation(metadataFile));
+                if (metadataEntry == null) {
+                    continue;
+                }
+                final Element rdf = parse(zipFile, metadataEntry).getRootElement();
+                for (final Element description : rdf.getChildren("Description", RDF_NS)) {
+                    final String about = description.getAttributeValue("about", RDF_NS);
+                    if (!".".equals(about) && !"./".equals(about)) {
+                        continue;
+                    }
+                    final String modelTypeText = description.getChildText(PMFMetadataNode.MODEL_TYPE_TAG);
+                    if (modelTypeText != null && modelType == null) {
+                        modelType = ModelType.valueOf(modelTypeText.trim());
+                    }
+                    for (final Element masterFile : description.getChildren(PMFMetadataNode.MASTER_FILE_TAG)) {
+                        masterFiles.add(masterFile.getTextTrim());
+                    }
+                }
+            }
+
+            return new PMFArchiveInfo(modelType, masterFiles, zipFile.size(), numDataEntries, numModelEntries);
+        } catch (IOException | JDOMException | IllegalArgumentException e) {
+            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+        }
+    }
+
+    private static Document parse(final ZipFile zipFile, final ZipEntry entry) throws IOException, JDOMException {
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            return new SAXBuilder().build(is);
+        }
+    }
+
+    /** Converts a manifest location such as "./metadata.rdf" into a zip entry name. */
+    private static String stripLocation(final String location) {
+        String name = location;
+        if (name.startsWith("./")) {
+            name = name.substring(2);
+        } else if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
+    /**
+     * @return model type from the archive description or null if the archive has no description
+     */
+    public ModelType getModelType() {
+        return modelType;
+    }
+
+    /**
+     * @return names of the master files from the archive description
+     */
+    public Set<String> getMasterFiles() {
+        return masterFiles;
+    }
+
+    /**
+     * @return number of entries in the zip file, including manifest, metadata and readme
+     */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * @return number of NuML entries
+     */
+    public int getNumDataEntries() {
+        return numDataEntries;
+    }
+
+    /**
+     * @return number of SBML entries
+     */
+    public int getNumModelEntries() {
+        return numModelEntries;
+    }
+
+    @Override
+    public String toString() {
+        return "PMFArchiveInfo [modelType=" + modelType + ", masterFiles=" + masterFiles + ", numEntries=" +
+                numEntries + ", numDataEntries=" + numDataEntries + ", numModelEntries=" + numModelEntries + "]";
+    }
+}
@@ -28,8 +28,8 @@ import java.util.stream.Collectors;
  */
 public class PMFMetadataNode {
 
-    private static final String MODEL_TYPE_TAG = "modelType";
-    private static final String MASTER_FILE_TAG = "masterfile";
+    static final String MODEL_TYPE_TAG = "modelType";
+    static final String MASTER_FILE_TAG = "masterfile";
 
     ModelType modelType;
     Set<String> masterFiles;
@@ -40,13 +40,15 @@ import javax.xml.transform.TransformerFactoryConfigurationError;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -167,75 +169,47 @@ public class PrimaryModelWDataFile {
 
     /**
      * Reads primary models with data from a file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @return List of primary models with data
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static List<PrimaryModelWData> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        URI modelURI = CombineArchiveUtil.getModelURI(path);
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            // Gets data and model entries
-            List<ArchiveEntry> dataEntries = ca.getEntriesWithFormat(URIS.numl);
-            List<ArchiveEntry> modelEntries = ca.getEntriesWithFormat(modelURI);
-
-            // define models
-            List<PrimaryModelWData> models = new ArrayList<>(modelEntries.size());
-
-            // Get data map
-            Map<String, ArchiveEntry> dataEntryMap = dataEntries.stream().collect(Collectors.toMap
-                    (ArchiveEntry::getFileName, entry -> entry));
-
-            // Parse models in the COMBINE archive
-            for (ArchiveEntry modelEntry : modelEntries) {
-                String modelDocName = modelEntry.getFileName();
-
-                // Read model
-                SBMLDocument modelDoc;
-                String dataDocName;
-                ArchiveEntry dataEntry;
-
-                try {
-                    modelDoc = CombineArchiveUtil.readModel(modelEntry.getPath());
-                    Annotation modelAnnot = modelDoc.getModel().getAnnotation();
-                    XMLNode metaDataNode = modelAnnot.getNonRDFannotation().getChildElement("metadata", "");
-                    XMLNode dataSourceRawNode = metaDataNode = metaDataNode.getChildElement("dataSource", "");
-                    DataSourceNode dataSourceNode = new DataSourceNode(dataSourceRawNode);
-
-                    dataDocName = dataSourceNode.getFile();
-                    dataEntry = dataEntryMap.get(dataDocName);
-
-                } catch (XMLStreamException | IOException e) {
-                    LOGGER.warn(modelDocName + ": Model could not be read. Skipping entry.");
-                    continue;
-                } catch (NullPointerException e) {
-                    // occurs when annotation is not set
-                    LOGGER.warn(modelDocName + ": Missing data. Skipping entry");
-                    continue;
-                }
-
-                // Read data
-                NuMLDocument dataDoc;
-                try {
-                    dataDoc = CombineArchiveUtil.readData(dataEntry.getPath());
-                } catch (ParserConfigurationException | SAXException e) {
-                    LOGGER.warn(dataDocName + ": could not be retrieved. Skipping entry.");
-                    continue;
-                }
-
-                models.add(new PrimaryModelWData(modelDocName, modelDoc, dataDocName, dataDoc));
-            }
-
-            return models;
-        } catch (IOException | ParseException | JDOMException e) {
+    /**
+     * Reads primary models with data from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<PrimaryModelWData> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getPrimaryModelsWData();
+        } catch (IOException e) {
             e.printStackTrace();
             throw new CombineArchiveException(e.getMessage());
         }
     }
 
+    /**
+     * Reads primary models with data from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<PrimaryModelWData>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getPrimaryModelsWData);
+    }
+
     /**
      * Writes primary models with data to a PMF or PMFX file. Faulty models are skipped. Existent
      * files are overwritten.
@@ -297,6 +271,7 @@ public class PrimaryModelWDataFile {
 
     /**
      * Writes primary models with data to a file. Faulty models are skipped. Existent files are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
@@ -304,49 +279,106 @@ public class PrimaryModelWDataFile {
      * @throws IOException
      */
     public static void write(Path path, List<PrimaryModelWData> models) throws CombineArchiveException, IOException {
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        write(path, models, new WriteOptions());
+    }
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
+    /**
+     * Writes primary models with data to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<PrimaryModelWData> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Creates new COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (PrimaryModelWData model : models) {
+            submit(buffers, model);
+        }
 
-            for (PrimaryModelWData model : models) {
+        // Creates COMBINE archive
+        PMFArchive.write(path, ModelType.PRIMARY_MODEL_WDATA, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model));
+    }
 
-                // write data
-                ArchiveEntry dataEntry;
-                try {
-                    dataEntry = CombineArchiveUtil.writeData(ca, model.getDataDoc(), model.getDataDocName());
-                } catch (IOException | TransformerFactoryConfigurationError |
-                        TransformerException | ParserConfigurationException e) {
-                    LOGGER.warn(model.getDataDocName() + ": could not be added. Skipping model.");
-                    continue;
-                }
+    /**
+     * Writes primary models with data to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<PrimaryModelWData> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.PRIMARY_MODEL_WDATA, models, executor,
+                PrimaryModelWDataFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 
-                // write model
-                try {
-                    CombineArchiveUtil.writeModel(ca, model.getModelDoc(), model.getModelDocName(), modelUri);
-                } catch (IOException | XMLStreamException | SBMLException e) {
-                    LOGGER.warn(model.getModelDocName() + ": could not be added. Skipping model.");
-                    // Removes corresponding data. Without the data it does not make sense to keep
-                    // its experimental data.
-                    ca.removeEntry(dataEntry);
-                }
-            }
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, PrimaryModelWData model) {
+        buffers.submit(model.getDataDoc());
+        buffers.submit(model.getModelDoc());
+    }
 
-            Element annotation = new PMFMetadataNode(ModelType.PRIMARY_MODEL_WDATA, Collections.emptySet())
-                    .node;
-            ca.addDescription(new DefaultMetaDataObject(annotation));
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri, PrimaryModelWData model)
+            throws IOException {
+        // write data
+        ArchiveEntry dataEntry;
+        try {
+            dataEntry = buffers.writeData(ca, model.getDataDoc(), model.getDataDocName());
+        } catch (IOException | TransformerFactoryConfigurationError |
+                TransformerException | ParserConfigurationException e) {
+            LOGGER.warn(model.getDataDocName() + ": could not be added. Skipping model.");
+            return;
+        }
 
-            CombineArchiveUtil.addReadme(ca);
+        // write model
+        try {
+            buffers.writeModel(ca, model.getModelDoc(), model.getModelDocName(), modelUri);
+        } catch (IOException | XMLStreamException | SBMLException e) {
+            LOGGER.warn(model.getModelDocName() + ": could not be added. Skipping model.");
+            // Removes corresponding data. Without the data it does not make sense to keep
+            // its experimental data.
+            buffers.removeEntry(ca, dataEntry);
+        }
+    }
 
-            ca.pack();
+    /**
+     * Opens a sink for writing primary models with data to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<PrimaryModelWData> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.PRIMARY_MODEL_WDATA,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
-            e.printStackTrace();
-            throw new CombineArchiveException(e.getMessage());
-        }
+    /**
+     * Opens an editor for adding, replacing and removing primary models with data in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<PrimaryModelWData> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.PRIMARY_MODEL_WDATA,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
     }
 }
@@ -32,12 +32,14 @@ import javax.xml.transform.TransformerFactoryConfigurationError;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Case 1b: Primary models without data file.
@@ -122,39 +124,46 @@ public class PrimaryModelWODataFile {
 
     /**
      * Reads primary models without data from a file. Faulty files are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
-    public static List<PrimaryModelWOData> read(Path path)
-            throws CombineArchiveException {
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            List<PrimaryModelWOData> models = new ArrayList<>();
-
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String docName = entry.getFileName();
-
-                // Read model
-                try {
-                    SBMLDocument doc = CombineArchiveUtil.readModel(entry.getPath());
-                    models.add(new PrimaryModelWOData(docName, doc));
-                } catch (XMLStreamException e) {
-                    e.printStackTrace();
-                    LOGGER.warn(docName + ": could not be read. Skipping entry");
-                }
-            }
-
-            return models;
+    public static List<PrimaryModelWOData> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        } catch (IOException | ParseException | JDOMException e) {
+    /**
+     * Reads primary models without data from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<PrimaryModelWOData> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getPrimaryModelsWOData();
+        } catch (IOException e) {
             e.printStackTrace();
             throw new CombineArchiveException(e.getMessage());
         }
     }
 
+    /**
+     * Reads primary models without data from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<PrimaryModelWOData>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getPrimaryModelsWOData);
+    }
+
     /**
      * Writes primary models without data to a PMF or PMFX file. Faulty data files are skipped.
      * Existent files with the same filename are overwritten.
@@ -205,36 +214,93 @@ public class PrimaryModelWODataFile {
      * are overwritten.
      */
     public static void write(Path path, List<PrimaryModelWOData> models) throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
 
+    /**
+     * Writes primary models without data to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<PrimaryModelWOData> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
-
-        // Creates new Combine archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-            for (PrimaryModelWOData model : models) {
-                // Write model
-                try {
-                    CombineArchiveUtil.writeModel(ca, model.getDoc(), model.getDocName(), modelUri);
-                } catch (IOException | TransformerFactoryConfigurationError |
-                        XMLStreamException e) {
-                    LOGGER.warn(model.getDocName() + ": could not be saved. Skipping model.");
-                }
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (PrimaryModelWOData model : models) {
+            submit(buffers, model);
+        }
 
-                // Adds description with model type
-                Element annot = new PMFMetadataNode(ModelType.PRIMARY_MODEL_WODATA, Collections.emptySet()).node;
-                ca.addDescription(new DefaultMetaDataObject(annot));
+        // Creates COMBINE archive
+        PMFArchive.write(path, ModelType.PRIMARY_MODEL_WODATA, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model));
+    }
 
-                CombineArchiveUtil.addReadme(ca);
+    /**
+     * Writes primary models without data to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<PrimaryModelWOData> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.PRIMARY_MODEL_WODATA, models, executor,
+                PrimaryModelWODataFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 
-                ca.pack();
-            }
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, PrimaryModelWOData model) {
+        buffers.submit(model.getDoc());
+    }
 
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
-            e.printStackTrace();
-            throw new CombineArchiveException(e.getMessage());
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri, PrimaryModelWOData model)
+            throws IOException {
+        // Write model
+        try {
+            buffers.writeModel(ca, model.getDoc(), model.getDocName(), modelUri);
+        } catch (IOException | TransformerFactoryConfigurationError |
+                XMLStreamException e) {
+            LOGGER.warn(model.getDocName() + ": could not be saved. Skipping model.");
         }
     }
+
+    /**
+     * Opens a sink for writing primary models without data to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<PrimaryModelWOData> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.PRIMARY_MODEL_WODATA,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
+
+    /**
+     * Opens an editor for adding, replacing and removing primary models without data in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<PrimaryModelWOData> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.PRIMARY_MODEL_WODATA,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model));
+    }
 }
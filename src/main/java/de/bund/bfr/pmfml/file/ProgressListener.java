@@ -0,0 +1,48 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+/**
+ * Receives an event before and after every entry of an archive is read or written.
+ * <p>
+ * Entries may be processed in parallel, so the events of different entries may come from several threads at the same
+ * time and implementations must be thread safe.
+ */
+public interface ProgressListener {
+
+    /**
+     * Listener ignoring every event.
+     */
+    ProgressListener NONE = new ProgressListener() {
+    };
+
+    /**
+     * @param entryName file name of the entry
+     * @param size      uncompressed size of the entry in bytes or -1 if it is unknown
+     */
+    default void entryStarted(String entryName, long size) {
+    }
+
+    /**
+     * @param entryName  file name of the entry
+     * @param size       uncompressed size of the entry in bytes or -1 if it is unknown
+     * @param nanos      time spent on the entry in nanoseconds
+     * @param successful false if the entry could not be read or written
+     */
+    default void entryFinished(String entryName, long size, long nanos, boolean successful) {
+    }
+}
@@ -0,0 +1,35 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+/**
+ * Documents of a {@link PMFArchive} that can be parsed.
+ * <p>
+ * Jobs that need only the time series of model archives, or only their descriptions, open them with a smaller
+ * projection and skip parsing the SBML documents, which takes most of the time of reading a file.
+ */
+public enum Projection {
+
+    /** Every NuML and SBML document */
+    ALL,
+
+    /** Only the NuML documents. The SBML documents are not parsed and the model views are empty */
+    DATA,
+
+    /** No document. Only the model type, the master files and the names of the documents */
+    METADATA
+}
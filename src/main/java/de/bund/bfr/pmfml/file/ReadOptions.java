@@ -0,0 +1,93 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Options for reading a PMF or PMFX file with the *ModelFile readers, e.g.
+ * {@link TwoStepTertiaryModelFile#read(java.nio.file.Path, ReadOptions)}, or for opening it with
+ * {@link PMFArchive#open(java.nio.file.Path, ReadOptions)}.
+ * <p>
+ * By default the documents are parsed one by one in the calling thread, nothing is reported, the reading is never
+ * cancelled and every entry is read through the zip file system. The setters return the options, so they can be
+ * chained:
+ * <pre>
+ * new ReadOptions().setExecutor(ForkJoinPool.commonPool()).setListener(listener)
+ * </pre>
+ */
+public class ReadOptions {
+
+    private Executor executor = Runnable::run;
+    private ProgressListener listener = ProgressListener.NONE;
+    private CancellationToken token = new CancellationToken();
+    private boolean memoryMapped;
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor executor for parsing the documents in parallel, see {@link PMFArchive}. It is not used by
+     *                 {@link PMFArchive#open(java.nio.file.Path, ReadOptions)}, whose documents are parsed with
+     *                 {@link PMFArchive#load(Executor)} or on access.
+     */
+    public ReadOptions setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+        return this;
+    }
+
+    public ProgressListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener notified of every document parsed
+     */
+    public ReadOptions setListener(final ProgressListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+        return this;
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    /**
+     * @param token checked before parsing every document. Once cancelled, documents not parsed yet throw a
+     *              {@link java.util.concurrent.CancellationException} instead.
+     */
+    public ReadOptions setToken(final CancellationToken token) {
+        this.token = Objects.requireNonNull(token);
+        return this;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets whether stored entries, e.g. those written with {@link CompressionStrategy#FASTEST_READ}, are parsed
+     * straight from a memory mapping of the file. Deflated entries are still inflated through the zip file system.
+     * The mapping is released when the archive is closed.
+     */
+    public ReadOptions setMemoryMapped(final boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+}
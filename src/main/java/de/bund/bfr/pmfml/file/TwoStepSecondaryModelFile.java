@@ -41,10 +41,12 @@ import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 /**
@@ -192,98 +194,44 @@ public class TwoStepSecondaryModelFile {
 
     /**
      * Reads {@link TwoStepSecondaryModel}(s) from a file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
      *
      * @param path
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
     public static List<TwoStepSecondaryModel> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        Map<String, NuMLDocument> dataEntryMap = new HashMap<>();
-        Map<String, SBMLDocument> secModelMap = new HashMap<>();
-        Map<String, SBMLDocument> primModelMap = new HashMap<>();
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-            // Gets data entries
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(URIS.numl)) {
-                String dataDocName = entry.getFileName();
-                try {
-                    NuMLDocument dataDoc = CombineArchiveUtil.readData(entry.getPath());
-                    dataEntryMap.put(dataDocName, dataDoc);
-                } catch (ParserConfigurationException | SAXException e) {
-                    LOGGER.warning(entry.getFileName() + ": could not be retrieved. Skipping entry.");
-                }
-            }
-
-            // Gets master files
-            MetaDataObject mdo = ca.getDescriptions().get(0);
-            Element metaParent = mdo.getXmlDescription();
-            PMFMetadataNode annot = new PMFMetadataNode(metaParent);
-            Set<String> masterFiles = annot.masterFiles;
-
-            // Classify models into primary or secondary models
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String docName = entry.getFileName();
-
-                try {
-                    SBMLDocument doc = CombineArchiveUtil.readModel(entry.getPath());
-                    if (masterFiles.contains(docName)) {
-                        secModelMap.put(docName, doc);
-                    } else {
-                        primModelMap.put(docName, doc);
-                    }
-                } catch (XMLStreamException | IOException e) {
-                    LOGGER.warning(docName + ": could not be read. Skipping entry.");
-                }
-            }
-
-
-        } catch (IOException | ParseException | JDOMException e) {
+    /**
+     * Reads two step secondary models from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<TwoStepSecondaryModel> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getTwoStepSecondaryModels();
+        } catch (IOException e) {
             e.printStackTrace();
             throw new CombineArchiveException(e.getMessage());
         }
+    }
 
-        List<TwoStepSecondaryModel> models = new ArrayList<>();
-
-        for (Map.Entry<String, SBMLDocument> entry : secModelMap.entrySet()) {
-            String secModelName = entry.getKey();
-            SBMLDocument secModelDoc = entry.getValue();
-
-            Model md = secModelDoc.getModel();
-
-            Annotation m2Annot = md.getAnnotation();
-            if (!m2Annot.isSetNonRDFannotation()) {
-                continue;
-            }
-
-            XMLNode m2MetaData = m2Annot.getNonRDFannotation().getChildElement("metadata", "");
-            List<XMLNode> refs = m2MetaData.getChildElements(PrimaryModelNode.TAG, "");
-            List<PrimaryModelWData> pms = new ArrayList<>(refs.size());
-
-            for (XMLNode ref : refs) {
-                String primModelName = ref.getChild(0).getCharacters();
-                SBMLDocument primModelDoc = primModelMap.get(primModelName);
-
-                // Looks for DataSourceNode
-                XMLNode m1Annot = primModelDoc.getModel().getAnnotation().getNonRDFannotation();
-                XMLNode m1MetaData = m1Annot.getChildElement("metadata", "");
-                XMLNode dataSourceRawNode = m1MetaData.getChildElement("dataSource", "");
-
-                if (dataSourceRawNode == null) {
-                    continue;
-                }
-
-                String dataFileName = new DataSourceNode(dataSourceRawNode).getFile();
-                NuMLDocument numlDoc = dataEntryMap.get(dataFileName);
-
-                pms.add(new PrimaryModelWData(primModelName, primModelDoc, dataFileName, numlDoc));
-            }
-
-            models.add(new TwoStepSecondaryModel(secModelName, secModelDoc, pms));
-        }
-
-        return models;
+    /**
+     * Reads two step secondary models from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<TwoStepSecondaryModel>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getTwoStepSecondaryModels);
     }
 
     /**
@@ -359,6 +307,7 @@ public class TwoStepSecondaryModelFile {
 
     /**
      * Writes two step secondary models to a file. Faulty models are skipped. Existent files are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
@@ -366,61 +315,119 @@ public class TwoStepSecondaryModelFile {
      */
     public static void write(Path path, List<TwoStepSecondaryModel> models)
             throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
 
+    /**
+     * Writes two step secondary models to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<TwoStepSecondaryModel> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
-
-        // Creates a COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            Set<String> masterFiles = new HashSet<>();
-
-            for (TwoStepSecondaryModel model : models) {
-
-                // Utility list with the entries added with the current model
-                // If an error occurs this it may be used for cleaning the archive
-                List<ArchiveEntry> addedEntries = new ArrayList<>();
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (TwoStepSecondaryModel model : models) {
+            submit(buffers, model);
+        }
 
-                // Write sec model
-                // Creates temporary file for the model
-                try {
-                    ArchiveEntry entry = CombineArchiveUtil.writeModel(ca, model.getSecDoc(), model.getSecDocName(),
-                            modelUri);
+        // Creates COMBINE archive
+        PMFArchive.write(path, ModelType.TWO_STEP_SECONDARY_MODEL, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model, masterFiles));
+    }
 
-                    addedEntries.add(entry);
-                    masterFiles.add(entry.getPath().getFileName().toString());
+    /**
+     * Writes two step secondary models to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<TwoStepSecondaryModel> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.TWO_STEP_SECONDARY_MODEL, models, executor,
+                TwoStepSecondaryModelFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 
-                    for (PrimaryModelWData primModel : model.getPrimModels()) {
-                        ArchiveEntry dataEntry = CombineArchiveUtil.writeData(ca, primModel.getDataDoc(), primModel
-                                .getDataDocName());
-                        addedEntries.add(dataEntry);
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, TwoStepSecondaryModel model) {
+        buffers.submit(model.getSecDoc());
+        for (PrimaryModelWData primModel : model.getPrimModels()) {
+            buffers.submit(primModel.getDataDoc());
+            buffers.submit(primModel.getModelDoc());
+        }
+    }
 
-                        // Write model
-                        CombineArchiveUtil.writeModel(ca, primModel.getModelDoc(), primModel.getModelDocName(),
-                                modelUri);
-                    }
-                } catch (XMLStreamException | ParserConfigurationException | TransformerException e) {
-                    LOGGER.warning(model.getSecDocName() + ": could not be read");
-                    for (ArchiveEntry entry : addedEntries) {
-                        ca.removeEntry(entry);
-                    }
-                }
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri,
+                    TwoStepSecondaryModel model, Set<String> masterFiles)
+            throws IOException {
+        // Utility list with the entries added with the current model
+        // If an error occurs this it may be used for cleaning the archive
+        List<ArchiveEntry> addedEntries = new ArrayList<>();
+
+        // Write sec model
+        // Creates temporary file for the model
+        try {
+            ArchiveEntry entry = buffers.writeModel(ca, model.getSecDoc(), model.getSecDocName(),
+                    modelUri);
+
+            addedEntries.add(entry);
+            masterFiles.add(entry.getPath().getFileName().toString());
+
+            for (PrimaryModelWData primModel : model.getPrimModels()) {
+                ArchiveEntry dataEntry = buffers.writeData(ca, primModel.getDataDoc(), primModel
+                        .getDataDocName());
+                addedEntries.add(dataEntry);
+
+                // Write model
+                buffers.writeModel(ca, primModel.getModelDoc(), primModel.getModelDocName(),
+                        modelUri);
             }
+        } catch (XMLStreamException | ParserConfigurationException | TransformerException e) {
+            LOGGER.warning(model.getSecDocName() + ": could not be read");
+            for (ArchiveEntry entry : addedEntries) {
+                buffers.removeEntry(ca, entry);
+            }
+        }
+    }
 
-            // Adds description with model type
-            Element annot = new PMFMetadataNode(ModelType.TWO_STEP_SECONDARY_MODEL, masterFiles).node;
-            ca.addDescription(new DefaultMetaDataObject(annot));
-
-            CombineArchiveUtil.addReadme(ca);
-
-            ca.pack();
+    /**
+     * Opens a sink for writing two step secondary models to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<TwoStepSecondaryModel> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.TWO_STEP_SECONDARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 
-        } catch (Exception e) {
-            Files.delete(path);  // Remove faulty file
-            e.printStackTrace();
-            throw new CombineArchiveException(e.getMessage());
-        }
+    /**
+     * Opens an editor for adding, replacing and removing two step secondary models in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<TwoStepSecondaryModel> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.TWO_STEP_SECONDARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
     }
 }
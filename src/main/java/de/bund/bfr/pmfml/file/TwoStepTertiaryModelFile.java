@@ -43,11 +43,14 @@ import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 /**
  * Case 3a: File with tertiary model generated with 2-step fit approach.
@@ -197,105 +200,58 @@ public class TwoStepTertiaryModelFile {
         return models;
     }
 
-    public static List<TwoStepTertiaryModel> read(Path path)
-            throws CombineArchiveException {
-
-        URI modelUri = CombineArchiveUtil.getModelURI(path);
-
-        List<TwoStepTertiaryModel> models = new ArrayList<>();
-
-        Map<String, NuMLDocument> dataDocMap = new HashMap<>();
-        Map<String, SBMLDocument> tertDocs = new HashMap<>();
-        Map<String, SBMLDocument> primDocs = new HashMap<>();
-        Map<String, SBMLDocument> secDocs = new HashMap<>();
-
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-
-            // Gets data documents
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(URIS.numl)) {
-                String docName = entry.getFileName();
-                try {
-                    NuMLDocument doc = CombineArchiveUtil.readData(entry.getPath());
-                    dataDocMap.put(docName, doc);
-                } catch (IOException | ParserConfigurationException | SAXException e) {
-                    LOGGER.warning(docName + " could not be read");
-                    e.printStackTrace();
-                }
-            }
-
-            Element metaParent = ca.getDescriptions().get(0).getXmlDescription();
-            Set<String> masterFiles = new PMFMetadataNode(metaParent).masterFiles;
-
-            // Classify models into tertiary or secondary models
-            for (ArchiveEntry entry : ca.getEntriesWithFormat(modelUri)) {
-                String docName = entry.getFileName();
-
-                try {
-                    SBMLDocument doc = CombineArchiveUtil.readModel(entry.getPath());
-
-                    if (masterFiles.contains(docName)) {
-                        tertDocs.put(docName, doc);
-                    } else if (doc.getModel().getListOfSpecies().size() == 0) {
-                        secDocs.put(docName, doc);
-                    } else {
-                        primDocs.put(docName, doc);
-                    }
-                } catch (IOException | XMLStreamException e) {
-                    LOGGER.warning(docName + " could not be read");
-                    e.printStackTrace();
-                }
-            }
+    /**
+     * Reads two step tertiary models from a file. Faulty models are skipped.
+     * The documents are parsed one by one in the calling thread.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     */
+    public static List<TwoStepTertiaryModel> read(Path path) throws CombineArchiveException {
+        return read(path, new ReadOptions());
+    }
 
-        } catch (IOException | JDOMException | ParseException e) {
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
+    /**
+     * Reads two step tertiary models from a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param options executor, listener, cancellation token and memory mapping of the read
+     * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
+     * @throws CancellationException   if the token of <code>options</code> was cancelled
+     */
+    public static List<TwoStepTertiaryModel> read(Path path, ReadOptions options) throws CombineArchiveException {
+        try (PMFArchive archive = PMFArchive.open(path, options)) {
+            return archive.load(options.getExecutor()).getTwoStepTertiaryModels();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new CombineArchiveException(e.getMessage());
         }
+    }
 
-        for (Map.Entry<String, SBMLDocument> entry : tertDocs.entrySet()) {
-            String tertDocName = entry.getKey();
-            SBMLDocument tertDoc = entry.getValue();
-
-            List<String> secModelNames = new ArrayList<>();
-            List<SBMLDocument> secModels = new ArrayList<>();
-            List<PrimaryModelWData> primModels = new ArrayList<>();
-
-            CompSBMLDocumentPlugin secCompPlugin = (CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel);
-
-            // Gets secondary model documents
-            for (ExternalModelDefinition emd : secCompPlugin.getListOfExternalModelDefinitions()) {
-                String secModelName = emd.getSource();
-                secModelNames.add(secModelName);
-
-                SBMLDocument secModel = secDocs.get(secModelName);
-                secModels.add(secModel);
-            }
-
-            /*
-             * All the secondary models of a two step tertiary model are linked to the same primary models. Thus
-             * these primary models can be retrieved from the first secondary model.
-             */
-            Model md = secModels.get(0).getModel();
-            XMLNode metadata = md.getAnnotation().getNonRDFannotation().getChildElement("metadata", "");
-            for (XMLNode pmNode : metadata.getChildElements(PrimaryModelNode.TAG, "")) {
-                // Gets model name from annotation
-                String mdName = pmNode.getChild(0).getCharacters();
-                // Gets primary model
-                SBMLDocument mdDoc = primDocs.get(mdName);
-                // Gets data source annotation of the primary model
-                XMLNode mdDocMetadata = mdDoc.getModel().getAnnotation().getNonRDFannotation().getChildElement
-                        ("metadata", "");
-                XMLNode node = mdDocMetadata.getChildElement("dataSource", "");
-                // Gets data name from this annotation
-                String dataName = new DataSourceNode(node).getFile();
-                // Gets data file
-                NuMLDocument dataDoc = dataDocMap.get(dataName);
-
-                primModels.add(new PrimaryModelWData(mdName, mdDoc, dataName, dataDoc));
-            }
-
-            models.add(new TwoStepTertiaryModel(tertDocName, tertDoc, primModels, secModelNames, secModels));
-        }
+    /**
+     * Reads two step tertiary models from a file without blocking.
+     * Opening the file, parsing the documents and linking them run on <code>executor</code>. Cancelling the returned
+     * future skips the documents not parsed yet.
+     *
+     * @param path
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed with the models, or exceptionally with a {@link CombineArchiveException} if the
+     * CombineArchive could not be opened
+     */
+    public static CompletableFuture<List<TwoStepTertiaryModel>> readAsync(Path path, Executor executor) {
+        return PMFArchive.readAsync(path, executor, PMFArchive::getTwoStepTertiaryModels);
+    }
 
-        return models;
+    /**
+     * Reads two step tertiary models from a file one at a time. Faulty models are skipped.
+     * Only the documents of the current model are held in memory, so very large files can be processed. The file
+     * stays open until the stream is closed, so the stream should be used with try-with-resources.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened
+     */
+    public static Stream<TwoStepTertiaryModel> stream(Path path) throws CombineArchiveException {
+        return PMFArchive.stream(path, PMFArchive::streamTwoStepTertiaryModels);
     }
 
     /**
@@ -377,73 +333,133 @@ public class TwoStepTertiaryModelFile {
     /**
      * Writes two step tertiary models to a PMF or PMFX file. Faulty models are skipped. Existent
      * files are overwritten.
+     * The documents are serialized one by one in the calling thread.
      *
      * @param path
      * @param models
      * @throws CombineArchiveException if the CombineArchive could not be opened or closed properly
      */
-    public static void write(Path path, List<TwoStepTertiaryModel> models)
-            throws CombineArchiveException, IOException {
+    public static void write(Path path, List<TwoStepTertiaryModel> models) throws CombineArchiveException, IOException {
+        write(path, models, new WriteOptions());
+    }
 
+    /**
+     * Writes two step tertiary models to a file. Faulty models are skipped.
+     *
+     * @param path
+     * @param models
+     * @param options executor, listener, cancellation token and compression of the write
+     * @throws CombineArchiveException if the CombineArchive could not be written
+     * @throws CancellationException   if the token of <code>options</code> was cancelled. The file is removed.
+     */
+    public static void write(Path path, List<TwoStepTertiaryModel> models, WriteOptions options)
+            throws CombineArchiveException, IOException {
         URI modelUri = CombineArchiveUtil.getModelURI(path);
 
-        // Remove if existent file
-        Files.deleteIfExists(path);
+        // Serializes all the documents in parallel. They are added below, in order, from this thread
+        DocumentBuffers buffers = new DocumentBuffers(options.getExecutor(), options.getListener(), options.getToken());
+        for (TwoStepTertiaryModel model : models) {
+            submit(buffers, model);
+        }
 
         // Creates COMBINE archive
-        try (CombineArchive ca = new CombineArchive(path.toFile())) {
-            Set<String> masterFiles = new HashSet<>(models.size());
-
-            // Adds models and data
-            for (TwoStepTertiaryModel model : models) {
-
-                List<ArchiveEntry> addedEntries = new ArrayList<>();
-
-                for (PrimaryModelWData pm : model.getPrimModels()) {
-                    try {
-                        addedEntries.add(CombineArchiveUtil.writeData(ca, pm.getDataDoc(), pm.getDataDocName()));
-                        addedEntries.add(CombineArchiveUtil.writeModel(ca, pm.getModelDoc(), pm.getModelDocName(),
-                                modelUri));
-                    } catch (IOException | TransformerException | ParserConfigurationException | XMLStreamException e) {
-                        LOGGER.warning(pm.getModelDocName() + " could not be saved");
-                        e.printStackTrace();
-                    }
-                }
+        PMFArchive.write(path, ModelType.TWO_STEP_TERTIARY_MODEL, models, buffers, options.getCompression(),
+                (ca, modelBuffers, model, masterFiles) -> add(ca, modelBuffers, modelUri, model, masterFiles));
+    }
 
-                for (int i = 0; i < model.getSecDocs().size(); i++) {
-                    String secDocName = model.getSecDocNames().get(i);
-                    SBMLDocument secDoc = model.getSecDocs().get(i);
+    /**
+     * Writes two step tertiary models to a file without blocking.
+     * The documents are serialized and the file is written on <code>executor</code>.
+     *
+     * @param path
+     * @param models
+     * @param executor executor for all the tasks, see {@link PMFArchive}
+     * @return future completed when the file is written, or exceptionally with a {@link CombineArchiveException} if
+     * the CombineArchive could not be written
+     */
+    public static CompletableFuture<Void> writeAsync(Path path, List<TwoStepTertiaryModel> models, Executor executor) {
+        return PMFArchive.writeAsync(path, ModelType.TWO_STEP_TERTIARY_MODEL, models, executor,
+                TwoStepTertiaryModelFile::submit,
+                modelUri -> (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 
-                    try {
-                        CombineArchiveUtil.writeModel(ca, secDoc, secDocName, modelUri);
-                    } catch (IOException | SBMLException | XMLStreamException e) {
-                        LOGGER.warning(secDocName + " could not be saved");
-                        e.printStackTrace();
-                    }
-                }
+    /**
+     * Submits the documents of a model to be serialized.
+     */
+    static void submit(DocumentBuffers buffers, TwoStepTertiaryModel model) {
+        for (PrimaryModelWData pm : model.getPrimModels()) {
+            buffers.submit(pm.getDataDoc());
+            buffers.submit(pm.getModelDoc());
+        }
+        model.getSecDocs().forEach(buffers::submit);
+        buffers.submit(model.getTertDoc());
+    }
 
-                // Tertiary model
-                try {
-                    ArchiveEntry masterEntry = CombineArchiveUtil.writeModel(ca, model.getTertDoc(), model
-                            .getTertDocName(), modelUri);
-                    masterFiles.add(masterEntry.getPath().getFileName().toString());
-                } catch (IOException | SBMLException | XMLStreamException e) {
-                    LOGGER.warning(model.getTertDocName() + " : could not be saved");
-                    e.printStackTrace();
-                }
+    /**
+     * Adds the entries of a model to an archive being written. Faulty models are skipped.
+     */
+    static void add(CombineArchive ca, DocumentBuffers buffers, URI modelUri,
+                    TwoStepTertiaryModel model, Set<String> masterFiles)
+            throws IOException {
+        List<ArchiveEntry> addedEntries = new ArrayList<>();
+
+        for (PrimaryModelWData pm : model.getPrimModels()) {
+            try {
+                addedEntries.add(buffers.writeData(ca, pm.getDataDoc(), pm.getDataDocName()));
+                addedEntries.add(buffers.writeModel(ca, pm.getModelDoc(), pm.getModelDocName(),
+                        modelUri));
+            } catch (IOException | TransformerException | ParserConfigurationException | XMLStreamException e) {
+                LOGGER.warning(pm.getModelDocName() + " could not be saved");
+                e.printStackTrace();
             }
+        }
 
-            // Adds description with model type
-            Element annot = new PMFMetadataNode(ModelType.TWO_STEP_TERTIARY_MODEL, masterFiles).node;
-            ca.addDescription(new DefaultMetaDataObject(annot));
+        for (int i = 0; i < model.getSecDocs().size(); i++) {
+            String secDocName = model.getSecDocNames().get(i);
+            SBMLDocument secDoc = model.getSecDocs().get(i);
 
-            CombineArchiveUtil.addReadme(ca);
+            try {
+                buffers.writeModel(ca, secDoc, secDocName, modelUri);
+            } catch (IOException | SBMLException | XMLStreamException e) {
+                LOGGER.warning(secDocName + " could not be saved");
+                e.printStackTrace();
+            }
+        }
 
-            ca.pack();
-        } catch (Exception e) {
-            Files.delete(path);  // Removes faulty file
+        // Tertiary model
+        try {
+            ArchiveEntry masterEntry = buffers.writeModel(ca, model.getTertDoc(), model
+                    .getTertDocName(), modelUri);
+            masterFiles.add(masterEntry.getPath().getFileName().toString());
+        } catch (IOException | SBMLException | XMLStreamException e) {
+            LOGGER.warning(model.getTertDocName() + " : could not be saved");
             e.printStackTrace();
-            throw new CombineArchiveException(path.getFileName() + " could not be opened");
         }
     }
+
+    /**
+     * Opens a sink for writing two step tertiary models to a file one at a time.
+     * The entries are written as soon as they are accepted and the file is completed when the sink is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be created
+     */
+    public static ModelSink<TwoStepTertiaryModel> sink(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelSink.open(path, ModelType.TWO_STEP_TERTIARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
+
+    /**
+     * Opens an editor for adding, replacing and removing two step tertiary models in an existing file.
+     * The entries not changed are copied as they are, without parsing them, when the editor is closed.
+     *
+     * @param path
+     * @throws CombineArchiveException if the CombineArchive could not be opened or holds other models
+     */
+    public static ModelEditor<TwoStepTertiaryModel> edit(Path path) throws CombineArchiveException, IOException {
+        URI modelUri = CombineArchiveUtil.getModelURI(path);
+        return ModelEditor.open(path, ModelType.TWO_STEP_TERTIARY_MODEL,
+                (ca, buffers, model, masterFiles) -> add(ca, buffers, modelUri, model, masterFiles));
+    }
 }
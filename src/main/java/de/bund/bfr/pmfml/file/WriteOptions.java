@@ -0,0 +1,88 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Options for writing a PMF or PMFX file with the *ModelFile writers, e.g.
+ * {@link TwoStepTertiaryModelFile#write(java.nio.file.Path, java.util.List, WriteOptions)}.
+ * <p>
+ * By default the documents are serialized one by one in the calling thread, nothing is reported, the writing is never
+ * cancelled and the entries are compressed like CombineArchive does. The setters return the options, so they can be
+ * chained:
+ * <pre>
+ * new WriteOptions().setExecutor(ForkJoinPool.commonPool()).setCompression(CompressionStrategy.FASTEST_READ)
+ * </pre>
+ */
+public class WriteOptions {
+
+    private Executor executor = Runnable::run;
+    private ProgressListener listener = ProgressListener.NONE;
+    private CancellationToken token = new CancellationToken();
+    private CompressionStrategy compression = CompressionStrategy.DEFAULT;
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor executor for serializing the documents in parallel, see {@link PMFArchive}
+     */
+    public WriteOptions setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+        return this;
+    }
+
+    public ProgressListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener notified of every entry added
+     */
+    public WriteOptions setListener(final ProgressListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+        return this;
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    /**
+     * @param token checked before serializing and adding every document. Once cancelled, the writing throws a
+     *              {@link java.util.concurrent.CancellationException} and the file is removed.
+     */
+    public WriteOptions setToken(final CancellationToken token) {
+        this.token = Objects.requireNonNull(token);
+        return this;
+    }
+
+    public CompressionStrategy getCompression() {
+        return compression;
+    }
+
+    /**
+     * @param compression compression of the entries by type
+     */
+    public WriteOptions setCompression(final CompressionStrategy compression) {
+        this.compression = Objects.requireNonNull(compression);
+        return this;
+    }
+}
@@ -0,0 +1,150 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.sbml.jsbml.AssignmentRule;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.Rule;
+import org.sbml.jsbml.SBMLDocument;
+
+import de.bund.bfr.pmfml.sbml.CompiledFormula;
+
+/**
+ * Predicts the values of a primary model over grids of time points.
+ * <p>
+ * The rule of the model is compiled once into a {@link CompiledFormula} of {@link #TIME}, with the constant
+ * parameters of the model bound to their values. Scenarios with other values for the parameters are predicted with
+ * {@link #PrimaryModelPredictor(SBMLDocument, Map)}.
+ */
+public class PrimaryModelPredictor {
+
+  /** Id of the time parameter of primary models. */
+  public static final String TIME = "Time";
+
+  private final String variable;
+  private final CompiledFormula formula;
+
+  public PrimaryModelPredictor(final PrimaryModelWData model) {
+    this(model.getModelDoc());
+  }
+
+  public PrimaryModelPredictor(final PrimaryModelWOData model) {
+    this(model.getDoc());
+  }
+
+  /**
+   * @throws IllegalArgumentException if the document has no model with an assignment rule or the rule cannot be
+   *         compiled
+   */
+  public PrimaryModelPredictor(final SBMLDocument modelDoc) {
+    this(modelDoc, new HashMap<>());
+  }
+
+  /**
+   * @param values values of parameters that replace the values in the model
+   * @throws IllegalArgumentException if the document has no model with an assignment rule or the rule cannot be
+   *         compiled
+   */
+  public PrimaryModelPredictor(final SBMLDocument modelDoc, final Map<String, Double> values) {
+    final Model model = getModel(modelDoc);
+    final AssignmentRule rule = getAssignmentRule(model);
+
+    final Map<String, Double> bindings = getConstants(model);
+    bindings.putAll(values);
+
+    variable = rule.getVariable();
+    formula = CompiledFormula.compile(rule.getMath(), TIME, bindings);
+  }
+
+  /** Returns the predicted variable, e.g. the species of the model. */
+  public String getVariable() {
+    return variable;
+  }
+
+  public CompiledFormula getFormula() {
+    return formula;
+  }
+
+  /**
+   * Predicts the values at some times.
+   *
+   * @param values array where the values are written. It may be <code>times</code> itself.
+   */
+  public void predict(final double[] times, final double[] values) {
+    formula.applyAsDouble(times, values);
+  }
+
+  public double[] predict(final double[] times) {
+    final double[] values = new double[times.length];
+    formula.applyAsDouble(times, values);
+    return values;
+  }
+
+  /**
+   * Predicts the values of many models or scenarios at the same times in parallel, one task per predictor.
+   *
+   * @return values of each predictor, in the order of the predictors
+   */
+  public static double[][] predict(final List<PrimaryModelPredictor> predictors, final double[] times,
+      final Executor executor) {
+    final double[][] values = new double[predictors.size()][];
+    final CompletableFuture<?>[] tasks = new CompletableFuture<?>[predictors.size()];
+    for (int i = 0; i < tasks.length; i++) {
+      final int index = i;
+      tasks[i] = CompletableFuture
+          .runAsync(() -> values[index] = predictors.get(index).predict(times), executor);
+    }
+    CompletableFuture.allOf(tasks).join();
+    return values;
+  }
+
+  static Model getModel(final SBMLDocument doc) {
+    final Model model = doc.getModel();
+    if (model == null) {
+      throw new IllegalArgumentException("Document without model");
+    }
+    return model;
+  }
+
+  /** Returns the first assignment rule of a model, the rule of PMF models. */
+  static AssignmentRule getAssignmentRule(final Model model) {
+    for (final Rule rule : model.getListOfRules()) {
+      if (rule instanceof AssignmentRule) {
+        return (AssignmentRule) rule;
+      }
+    }
+    throw new IllegalArgumentException("Model without assignment rule: " + model.getId());
+  }
+
+  /** Returns the values of the constant parameters of a model, i.e. its coefficients. */
+  static Map<String, Double> getConstants(final Model model) {
+    final Map<String, Double> constants = new HashMap<>();
+    for (final Parameter parameter : model.getListOfParameters()) {
+      if (parameter.isConstant() && parameter.isSetValue()) {
+        constants.put(parameter.getId(), parameter.getValue());
+      }
+    }
+    return constants;
+  }
+}
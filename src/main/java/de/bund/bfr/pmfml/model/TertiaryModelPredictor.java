@@ -0,0 +1,271 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.sbml.jsbml.AssignmentRule;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.CompSBasePlugin;
+import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
+import org.sbml.jsbml.ext.comp.Replacing;
+import org.sbml.jsbml.ext.comp.Submodel;
+
+import de.bund.bfr.pmfml.sbml.CompiledFormula;
+
+/**
+ * Predicts the values of a tertiary model for grids of conditions and time points.
+ * <p>
+ * A tertiary model is a primary model whose coefficients, e.g. the maximum growth rate, are computed by secondary
+ * models from the conditions, e.g. temperature and pH. The linkage is resolved once from the comp package: each
+ * coefficient is replaced by the variable of a secondary model, a submodel of the tertiary model, and the non-constant
+ * parameters of the secondary documents other than their variables are the conditions. The primary and secondary
+ * rules are then compiled into {@link CompiledFormula}s with the constant parameters bound to their values.
+ * <p>
+ * A prediction evaluates the secondary models once for its condition vector and the primary model over the whole time
+ * grid. Condition vectors hold the values of {@link #getConditions()} in order.
+ */
+public class TertiaryModelPredictor {
+
+  private static final int CONDITIONS_PER_TASK = 64;
+
+  private final String variable;
+  private final List<String> conditions;
+  private final List<String> secVariables;
+
+  private final CompiledFormula[] secFormulas;
+  private final CompiledFormula primFormula;
+
+  public TertiaryModelPredictor(final TwoStepTertiaryModel model) {
+    this(model.getTertDoc(), model.getSecDocNames(), model.getSecDocs());
+  }
+
+  public TertiaryModelPredictor(final OneStepTertiaryModel model) {
+    this(model.getTertiaryDoc(), model.getSecDocNames(), model.getSecDocs());
+  }
+
+  public TertiaryModelPredictor(final ManualTertiaryModel model) {
+    this(model.getTertiaryDoc(), model.getSecDocNames(), model.getSecDocs());
+  }
+
+  /**
+   * @param tertDoc     document of the tertiary model, with the rule of the primary model
+   * @param secDocNames names of the secondary documents, the sources of the external model definitions of
+   *                    <code>tertDoc</code>
+   * @param secDocs     documents of the secondary models, in the order of <code>secDocNames</code>
+   * @throws IllegalArgumentException if a document has no model with an assignment rule, a rule cannot be compiled or
+   *                                  a coefficient and a secondary model are not linked to each other
+   */
+  public TertiaryModelPredictor(final SBMLDocument tertDoc, final List<String> secDocNames,
+      final List<SBMLDocument> secDocs) {
+    final Model tertModel = PrimaryModelPredictor.getModel(tertDoc);
+    final Map<String, SBMLDocument> linkedDocs = getLinkedDocs(tertDoc, tertModel, secDocNames, secDocs);
+
+    final List<AssignmentRule> secRules = new ArrayList<>(linkedDocs.size());
+    final List<Map<String, Double>> secConstants = new ArrayList<>(linkedDocs.size());
+    final Set<String> secOutputs = new LinkedHashSet<>();
+    final Set<String> conditions = new LinkedHashSet<>();
+
+    for (final SBMLDocument secDoc : linkedDocs.values()) {
+      final Model secModel = PrimaryModelPredictor.getModel(secDoc);
+      final AssignmentRule secRule = PrimaryModelPredictor.getAssignmentRule(secModel);
+      secRules.add(secRule);
+      secConstants.add(PrimaryModelPredictor.getConstants(secModel));
+      secOutputs.add(secRule.getVariable());
+
+      for (final Parameter parameter : secModel.getListOfParameters()) {
+        if (!parameter.isConstant() && !parameter.getId().equals(secRule.getVariable())) {
+          conditions.add(parameter.getId());
+        }
+      }
+    }
+    // The variables assigned by the secondary models and the coefficients are not conditions
+    conditions.removeAll(secOutputs);
+    conditions.removeAll(linkedDocs.keySet());
+
+    final List<String> secVariables = new ArrayList<>(linkedDocs.keySet());
+    this.conditions = Collections.unmodifiableList(new ArrayList<>(conditions));
+    this.secVariables = Collections.unmodifiableList(secVariables);
+
+    final String[] conditionArray = conditions.toArray(new String[conditions.size()]);
+    secFormulas = new CompiledFormula[secRules.size()];
+    for (int i = 0; i < secFormulas.length; i++) {
+      secFormulas[i] =
+          CompiledFormula.compile(secRules.get(i).getMath(), conditionArray, secConstants.get(i));
+    }
+
+    // Arguments of the primary model: time, coefficients computed by the secondary models and conditions
+    final String[] primArguments = new String[1 + secVariables.size() + conditionArray.length];
+    primArguments[0] = PrimaryModelPredictor.TIME;
+    for (int i = 0; i < secVariables.size(); i++) {
+      primArguments[1 + i] = secVariables.get(i);
+    }
+    System.arraycopy(conditionArray, 0, primArguments, 1 + secVariables.size(), conditionArray.length);
+
+    final AssignmentRule primRule = PrimaryModelPredictor.getAssignmentRule(tertModel);
+    variable = primRule.getVariable();
+    primFormula = CompiledFormula.compile(primRule.getMath(), primArguments,
+        PrimaryModelPredictor.getConstants(tertModel));
+  }
+
+  /**
+   * Links the coefficients of the primary model to the secondary documents. A coefficient is linked by a replacement
+   * that refers to a submodel of the tertiary model, whose external model definition has the name of a secondary
+   * document as source. The element of the secondary model in the replacement must be the variable of its rule.
+   *
+   * @return secondary documents by coefficient, in the order of the parameters of the tertiary model
+   */
+  private static Map<String, SBMLDocument> getLinkedDocs(final SBMLDocument tertDoc, final Model tertModel,
+      final List<String> secDocNames, final List<SBMLDocument> secDocs) {
+    final Map<String, SBMLDocument> docsByName = new HashMap<>();
+    for (int i = 0; i < secDocNames.size(); i++) {
+      docsByName.put(secDocNames.get(i), secDocs.get(i));
+    }
+
+    final CompSBMLDocumentPlugin docPlugin = (CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel);
+    final CompModelPlugin modelPlugin = (CompModelPlugin) tertModel.getPlugin(CompConstants.shortLabel);
+    final Map<String, SBMLDocument> docsBySubmodel = new HashMap<>();
+    for (final Submodel submodel : modelPlugin.getListOfSubmodels()) {
+      final ExternalModelDefinition emd = docPlugin.getExternalModelDefinition(submodel.getModelRef());
+      final SBMLDocument secDoc = emd == null ? null : docsByName.get(emd.getSource());
+      if (secDoc == null) {
+        throw new IllegalArgumentException("No secondary model for submodel " + submodel.getId());
+      }
+      docsBySubmodel.put(submodel.getId(), secDoc);
+    }
+
+    final Map<String, SBMLDocument> linkedDocs = new LinkedHashMap<>();
+    for (final Parameter parameter : tertModel.getListOfParameters()) {
+      final CompSBasePlugin plugin = (CompSBasePlugin) parameter.getExtension(CompConstants.shortLabel);
+      if (plugin == null) {
+        continue;
+      }
+
+      final List<Replacing> replacements = new ArrayList<>(plugin.getListOfReplacedElements());
+      if (plugin.isSetReplacedBy()) {
+        replacements.add(plugin.getReplacedBy());
+      }
+      for (final Replacing replacement : replacements) {
+        final SBMLDocument secDoc = docsBySubmodel.get(replacement.getSubmodelRef());
+        if (secDoc == null) {
+          throw new IllegalArgumentException(
+              "Coefficient " + parameter.getId() + " has no linked secondary model " + replacement.getSubmodelRef());
+        }
+        final String secVariable =
+            PrimaryModelPredictor.getAssignmentRule(PrimaryModelPredictor.getModel(secDoc)).getVariable();
+        if (!secVariable.equals(replacement.getIdRef())) {
+          throw new IllegalArgumentException("Coefficient " + parameter.getId() + " is linked to "
+              + replacement.getIdRef() + " instead of the secondary variable " + secVariable);
+        }
+        if (linkedDocs.put(parameter.getId(), secDoc) != null) {
+          throw new IllegalArgumentException("Coefficient " + parameter.getId() + " has several secondary models");
+        }
+      }
+    }
+
+    for (final Map.Entry<String, SBMLDocument> entry : docsBySubmodel.entrySet()) {
+      if (!linkedDocs.containsValue(entry.getValue())) {
+        throw new IllegalArgumentException("Secondary model of submodel " + entry.getKey() + " has no coefficient");
+      }
+    }
+    return linkedDocs;
+  }
+
+  /** Returns the predicted variable, e.g. the species of the primary model. */
+  public String getVariable() {
+    return variable;
+  }
+
+  /** Returns the names of the conditions, in the order of the condition vectors. */
+  public List<String> getConditions() {
+    return conditions;
+  }
+
+  /** Returns the coefficients of the primary model computed by the secondary models, in order. */
+  public List<String> getSecondaryVariables() {
+    return secVariables;
+  }
+
+  /**
+   * Predicts the values at some times for a condition vector.
+   *
+   * @param values array where the values are written. It may be <code>times</code> itself.
+   * @throws IllegalArgumentException if the condition vector does not have a value per condition
+   */
+  public void predict(final double[] conditionValues, final double[] times, final double[] values) {
+    predict(conditionValues, times, values, new double[1 + secFormulas.length + conditions.size()]);
+  }
+
+  /** Predicts with a buffer for the arguments of the primary rule, which the tasks of a grid reuse. */
+  private void predict(final double[] conditionValues, final double[] times, final double[] values,
+      final double[] arguments) {
+    if (conditionValues.length != conditions.size()) {
+      throw new IllegalArgumentException(
+          conditionValues.length + " values for " + conditions.size() + " conditions " + conditions);
+    }
+
+    for (int i = 0; i < secFormulas.length; i++) {
+      arguments[1 + i] = secFormulas[i].evaluate(conditionValues);
+    }
+    System.arraycopy(conditionValues, 0, arguments, 1 + secFormulas.length, conditionValues.length);
+
+    primFormula.evaluate(times, arguments, values);
+  }
+
+  public double[] predict(final double[] conditionValues, final double[] times) {
+    final double[] values = new double[times.length];
+    predict(conditionValues, times, values);
+    return values;
+  }
+
+  /**
+   * Predicts the values at the same times for many condition vectors in parallel.
+   *
+   * @return values for each condition vector, in the order of the condition vectors
+   */
+  public double[][] predict(final double[][] conditionValues, final double[] times, final Executor executor) {
+    final double[][] values = new double[conditionValues.length][];
+    final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+    for (int from = 0; from < conditionValues.length; from += CONDITIONS_PER_TASK) {
+      final int start = from;
+      final int end = Math.min(from + CONDITIONS_PER_TASK, conditionValues.length);
+      tasks.add(CompletableFuture.runAsync(() -> {
+        final double[] arguments = new double[1 + secFormulas.length + conditions.size()];
+        for (int i = start; i < end; i++) {
+          values[i] = new double[times.length];
+          predict(conditionValues[i], times, values[i], arguments);
+        }
+      }, executor));
+    }
+    CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).join();
+    return values;
+  }
+}
@@ -84,6 +84,20 @@ public class ConcentrationOntology {
         return species;
     }
 
+    /**
+     * @return deep copy of this ontology
+     */
+    ConcentrationOntology copy() {
+        final ModelVariable[] modelVariables = compartment.getModelVariables();
+        final PMFCompartment compartmentCopy = SBMLFactory.createPMFCompartment(compartment.getId(),
+                compartment.getName(), compartment.getPMFCode(), compartment.getDetail(),
+                modelVariables == null ? null : modelVariables.clone());
+        final PMFSpecies speciesCopy = SBMLFactory.createPMFSpecies(species.getCompartment(), species.getId(),
+                species.getName(), species.getUnits(), species.getCombaseCode(), species.getDetail(),
+                species.getDescription());
+        return new ConcentrationOntology(UnitDefinitionNuMLNode.copy(unitDefinition), compartmentCopy, speciesCopy);
+    }
+
     @Override
     public String toString() {
         return "OntologyTerm [id=" + ID + ", term=" + TERM + ", sourceTermId=" + SOURCE_TERM_ID + ", ontologyURI=" + URI
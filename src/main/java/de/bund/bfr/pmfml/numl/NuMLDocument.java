@@ -25,9 +25,17 @@ import org.w3c.dom.NodeList;
  */
 public class NuMLDocument {
 
-  private static final String NUML_NAMESPACE = "http://www.numl.org/numl/level1/version1";
-  private static final int VERSION = 1;
-  private static final int LEVEL = 1;
+  static final String NUML_NAMESPACE = "http://www.numl.org/numl/level1/version1";
+  static final int VERSION = 1;
+  static final int LEVEL = 1;
+
+  /** Prefixes and URIs of the namespaces declared in the numl element. */
+  static final String[][] NAMESPACES = {
+      {"pmf", "http://sourceforge.net/projects/microbialmodelingexchange/files/PMF-ML"},
+      {"sbml", "http://www.sbml.org/sbml/level3/version1/core"},
+      {"dc", "http://purl.org/dc/elements/1.1/"},
+      {"dcterms", "http://purl.org/dc/terms/"},
+      {"pmmlab", "http://sourceforge.net/projects/microbialmodelingexchange/files/PMF-ML"}};
 
   static final String ELEMENT_NAME = "numl";
 
@@ -66,17 +74,23 @@ public class NuMLDocument {
     return resultComponent;
   }
 
+  /**
+   * Copies the document without serializing it. The time series of the result component is immutable and thus
+   * shared, so the copy is much cheaper than parsing the document again.
+   *
+   * @return deep copy of this document
+   */
+  public NuMLDocument copy() {
+    return new NuMLDocument(concOntology.copy(), timeOntology.copy(), resultComponent.copy());
+  }
+
   public Element toNode(final Document doc) {
     final Element node = doc.createElementNS(NUML_NAMESPACE, ELEMENT_NAME);
     node.setAttribute("version", Integer.toString(VERSION));
     node.setAttribute("level", Integer.toString(LEVEL));
-    node.setAttribute("xmlns:pmf",
-        "http://sourceforge.net/projects/microbialmodelingexchange/files/PMF-ML");
-    node.setAttribute("xmlns:sbml", "http://www.sbml.org/sbml/level3/version1/core");
-    node.setAttribute("xmlns:dc", "http://purl.org/dc/elements/1.1/");
-    node.setAttribute("xmlns:dcterms", "http://purl.org/dc/terms/");
-    node.setAttribute("xmlns:pmmlab",
-        "http://sourceforge.net/projects/microbialmodelingexchange/files/PMF-ML");
+    for (final String[] namespace : NAMESPACES) {
+      node.setAttribute("xmlns:" + namespace[0], namespace[1]);
+    }
 
     node.appendChild(concOntology.toNode(doc));
     node.appendChild(timeOntology.toNode(doc));
@@ -0,0 +1,229 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a {@link NuMLDocument} in a single forward pass with a StAX parser.
+ * <p>
+ * The tuples of the result component, which make up most of a NuML document, are parsed straight into values
+ * without building any DOM. The small ontology terms and the metadata of the result component are copied into
+ * detached DOM elements and handed to the same constructors used by {@link NuMLReader#read(InputStream)}, so both
+ * readers build the same objects.
+ */
+class NuMLStreamReader {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private NuMLStreamReader() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Like the DOM reader, not namespace aware: species annotations use the undeclared prefix "pmmlab"
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    static NuMLDocument read(final InputStream is) throws XMLStreamException, ParserConfigurationException {
+        // Document used only as factory of the detached elements
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+        ConcentrationOntology concOntology = null;
+        TimeOntology timeOntology = null;
+        ResultComponent resultComponent = null;
+
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(is);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                final String name = getName(reader);
+                if (ConcentrationOntology.ELEMENT_NAME.equals(name)) {
+                    // The concentration ontology term comes always before the time ontology term
+                    final Element ontologyElement = readElement(reader, doc);
+                    if (concOntology == null) {
+                        concOntology = new ConcentrationOntology(ontologyElement);
+                    } else if (timeOntology == null) {
+                        timeOntology = new TimeOntology(ontologyElement);
+                    }
+                } else if (ResultComponent.ELEMENT_NAME.equals(name) && resultComponent == null) {
+                    resultComponent = readResultComponent(reader, doc);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (concOntology == null || timeOntology == null || resultComponent == null) {
+            throw new XMLStreamException("Incomplete NuML document");
+        }
+
+        return new NuMLDocument(concOntology, timeOntology, resultComponent);
+    }
+
+    /**
+     * Reads a result component. Everything but the tuples is copied into an element for the
+     * {@link ResultComponent#ResultComponent(Element)} constructor. The tuples are parsed on the fly.
+     */
+    private static ResultComponent readResultComponent(final XMLStreamReader reader, final Document doc)
+            throws XMLStreamException {
+        final Element node = createElement(reader, doc);
+        TimeSeries timeSeries = new TimeSeries(new double[0], new double[0]);
+
+        while (true) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            if (ResultComponent.DIMENSION.equals(getName(reader))) {
+                node.appendChild(createElement(reader, doc));
+                timeSeries = readTuples(reader);
+            } else {
+                node.appendChild(readElement(reader, doc));
+            }
+        }
+
+        final ResultComponent resultComponent = new ResultComponent(node);
+        resultComponent.setTimeSeries(timeSeries);
+        return resultComponent;
+    }
+
+    /**
+     * Reads the tuples of a dimension element straight into the arrays of a {@link TimeSeries}. The reader is left
+     * on the end of the dimension element.
+     */
+    private static TimeSeries readTuples(final XMLStreamReader reader) throws XMLStreamException {
+        double[] times = new double[INITIAL_CAPACITY];
+        double[] concentrations = new double[INITIAL_CAPACITY];
+        int size = 0;
+        final double[] values = new double[2];
+
+        int depth = 1;
+        int numValues = 0;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String name = getName(reader);
+                if (Tuple.ELEMENT_NAME.equals(name)) {
+                    numValues = 0;
+                    depth++;
+                } else if (AtomicValue.ELEMENT_NAME.equals(name)) {
+                    // getElementText consumes the end of the atomic value
+                    final double value = Double.parseDouble(reader.getElementText());
+                    if (numValues < values.length) {
+                        values[numValues] = value;
+                    }
+                    numValues++;
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (Tuple.ELEMENT_NAME.equals(getName(reader))) {
+                    if (numValues < 2) {
+                        throw new XMLStreamException("Tuple with less than two atomic values",
+                                reader.getLocation());
+                    }
+                    if (size == times.length) {
+                        times = Arrays.copyOf(times, size * 2);
+                        concentrations = Arrays.copyOf(concentrations, size * 2);
+                    }
+                    concentrations[size] = values[0];
+                    times[size] = values[1];
+                    size++;
+                }
+                depth--;
+            }
+        }
+
+        return TimeSeries.wrap(Arrays.copyOf(times, size), Arrays.copyOf(concentrations, size));
+    }
+
+    /**
+     * Copies the current element and its subtree into a detached element. The reader is left on the end of the
+     * element.
+     */
+    private static Element readElement(final XMLStreamReader reader, final Document doc) throws XMLStreamException {
+        final Element root = createElement(reader, doc);
+
+        Element current = root;
+        while (current != null) {
+            final int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    final Element child = createElement(reader, doc);
+                    current.appendChild(child);
+                    current = child;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    current = current == root ? null : (Element) current.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(doc.createTextNode(reader.getText()));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return root;
+    }
+
+    /** Creates an element with the qualified name and the attributes of the current element. */
+    private static Element createElement(final XMLStreamReader reader, final Document doc) {
+        final Element element = doc.createElement(getName(reader));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String prefix = reader.getAttributePrefix(i);
+            final String localName = reader.getAttributeLocalName(i);
+            final String name = prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+            element.setAttribute(name, reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    /**
+     * Returns the qualified name of the current element, e.g. "sbml:unitDefinition". The existing constructors look
+     * elements up by their qualified names.
+     */
+    private static String getName(final XMLStreamReader reader) {
+        final String prefix = reader.getPrefix();
+        final String localName = reader.getLocalName();
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+}
@@ -0,0 +1,186 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+
+/**
+ * Writes a {@link NuMLDocument} with a StAX writer.
+ * <p>
+ * The tuples are written one at a time, so the memory used does not depend on their number. The small ontology
+ * terms and the metadata of the result component are built with the same <code>toNode</code> methods used by
+ * {@link NuMLWriter#write(NuMLDocument, OutputStream)} and copied to the output.
+ */
+class NuMLStreamWriter {
+
+    private static final String ENCODING = "UTF-8";
+    private static final String INDENT = "  ";
+
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter writer;
+    private final boolean indent;
+    private int depth;
+
+    private NuMLStreamWriter(final XMLStreamWriter writer, final boolean indent) {
+        this.writer = writer;
+        this.indent = indent;
+    }
+
+    static void write(final NuMLDocument doc, final OutputStream os, final boolean indent)
+            throws XMLStreamException, ParserConfigurationException {
+        // Document used only as factory of the detached elements
+        final Document xmlDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+        final XMLStreamWriter writer = FACTORY.createXMLStreamWriter(os, ENCODING);
+        try {
+            new NuMLStreamWriter(writer, indent).writeDocument(doc, xmlDoc);
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeDocument(final NuMLDocument doc, final Document xmlDoc) throws XMLStreamException {
+        writer.writeStartDocument(ENCODING, "1.0");
+
+        startElement(NuMLDocument.ELEMENT_NAME);
+        writer.writeDefaultNamespace(NuMLDocument.NUML_NAMESPACE);
+        for (final String[] namespace : NuMLDocument.NAMESPACES) {
+            writer.writeNamespace(namespace[0], namespace[1]);
+        }
+        writer.writeAttribute("version", Integer.toString(NuMLDocument.VERSION));
+        writer.writeAttribute("level", Integer.toString(NuMLDocument.LEVEL));
+
+        writeNode(doc.getConcentrationOntologyTerm().toNode(xmlDoc));
+        writeNode(doc.getTimeOntologyTerm().toNode(xmlDoc));
+        writeResultComponent(doc.getResultComponent(), xmlDoc);
+
+        endElement(true);
+        writer.writeEndDocument();
+    }
+
+    private void writeResultComponent(final ResultComponent resultComponent, final Document xmlDoc)
+            throws XMLStreamException {
+        startElement(ResultComponent.ELEMENT_NAME);
+        final String id = resultComponent.getID();
+        writer.writeAttribute("id", id == null ? "" : id);
+
+        writeNode(resultComponent.createAnnotationNode(xmlDoc));
+
+        startElement(ResultComponent.DIMENSION_DESCRIPTION);
+        writeNode(resultComponent.getDimensionDescription().toNode(xmlDoc));
+        endElement(true);
+
+        startElement(ResultComponent.DIMENSION);
+        final TimeSeries timeSeries = resultComponent.getTimeSeries();
+        for (int i = 0; i < timeSeries.size(); i++) {
+            startElement(Tuple.ELEMENT_NAME);
+            writeAtomicValue(timeSeries.getConcentration(i));
+            writeAtomicValue(timeSeries.getTime(i));
+            endElement(true);
+        }
+        endElement(true);
+
+        endElement(true);
+    }
+
+    private void writeAtomicValue(final double value) throws XMLStreamException {
+        startElement(AtomicValue.ELEMENT_NAME);
+        writer.writeCharacters(Double.toString(value));
+        endElement(false);
+    }
+
+    /** Copies a detached element and its subtree. Namespace declarations are already written in the root. */
+    private void writeNode(final Element element) throws XMLStreamException {
+        final boolean hasChildElements = hasChildElements(element);
+
+        if (element.hasChildNodes()) {
+            startElement(element.getNodeName());
+        } else {
+            newLine();
+            writer.writeEmptyElement(element.getNodeName());
+        }
+
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            writer.writeAttribute(attribute.getName(), attribute.getValue());
+        }
+
+        if (!element.hasChildNodes()) {
+            return;
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                writeNode((Element) child);
+            } else if (child.getNodeType() == Node.TEXT_NODE && !hasChildElements) {
+                writer.writeCharacters(child.getNodeValue());
+            }
+        }
+
+        endElement(hasChildElements);
+    }
+
+    private static boolean hasChildElements(final Element element) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startElement(final String name) throws XMLStreamException {
+        newLine();
+        writer.writeStartElement(name);
+        depth++;
+    }
+
+    /**
+     * @param newLine whether the end tag goes in a new line. False for elements with only text.
+     */
+    private void endElement(final boolean newLine) throws XMLStreamException {
+        depth--;
+        if (newLine) {
+            newLine();
+        }
+        writer.writeEndElement();
+    }
+
+    private void newLine() throws XMLStreamException {
+        if (!indent) {
+            return;
+        }
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; i++) {
+            writer.writeCharacters(INDENT);
+        }
+    }
+}
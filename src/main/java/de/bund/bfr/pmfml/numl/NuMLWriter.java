@@ -20,10 +20,12 @@ import org.w3c.dom.Document;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
+import java.io.OutputStream;
 
 /**
  * @author Miguel Alba
@@ -34,12 +36,37 @@ public class NuMLWriter {
 
   public static void write(final NuMLDocument doc, final File file) throws TransformerFactoryConfigurationError,
       TransformerException, ParserConfigurationException {
+    write(doc, new StreamResult(file));
+  }
+
+  /**
+   * Writes a {@link NuMLDocument} to an {@link OutputStream}. The stream is not closed.
+   */
+  public static void write(final NuMLDocument doc, final OutputStream os) throws TransformerFactoryConfigurationError,
+      TransformerException, ParserConfigurationException {
+    write(doc, new StreamResult(os));
+  }
+
+  /**
+   * Writes a {@link NuMLDocument} to an {@link OutputStream} with a StAX writer, without building a DOM of the whole
+   * document. Tuples are written one at a time, so the memory used does not grow with their number. The stream is
+   * not closed.
+   *
+   * @param indent whether to indent the output like {@link #write(NuMLDocument, OutputStream)}
+   */
+  public static void writeStreaming(final NuMLDocument doc, final OutputStream os, final boolean indent)
+      throws XMLStreamException, ParserConfigurationException {
+    NuMLStreamWriter.write(doc, os, indent);
+  }
+
+  private static void write(final NuMLDocument doc, final StreamResult result)
+      throws TransformerFactoryConfigurationError, TransformerException, ParserConfigurationException {
     final Document xmlDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
     xmlDoc.appendChild(doc.toNode(xmlDoc));
 
     final Transformer transformer = TransformerFactory.newInstance().newTransformer();
     transformer.setOutputProperty(OutputKeys.INDENT, "yes");
     transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-    transformer.transform(new DOMSource(xmlDoc), new StreamResult(file));
+    transformer.transform(new DOMSource(xmlDoc), result);
   }
 }
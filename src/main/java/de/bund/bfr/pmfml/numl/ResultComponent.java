@@ -22,6 +22,7 @@ import de.bund.bfr.pmfml.sbml.RIS;
 import de.bund.bfr.pmfml.sbml.Reference;
 import de.bund.bfr.pmfml.sbml.ReferenceImpl;
 import de.bund.bfr.pmfml.sbml.ReferenceType;
+import de.bund.bfr.pmfml.sbml.SBMLFactory;
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -52,14 +53,14 @@ public class ResultComponent {
     private static final String MODEL_TYPE = "pmmlab:modelType";
     private static final String RIGHTS = "pmmlab:rights";
 
-    private static final String DIMENSION_DESCRIPTION = "dimensionDescription";
-    private static final String DIMENSION = "dimension";
+    static final String DIMENSION_DESCRIPTION = "dimensionDescription";
+    static final String DIMENSION = "dimension";
 
     private Integer condID;
     private ModelType modelType;
     private Reference[] references;
     private TupleDescription dimensionDescription;
-    private Tuple[] dimensions;
+    private TimeSeries timeSeries;
     private Map<String, String> strProps; // String properties
     private String notes;
 
@@ -70,7 +71,7 @@ public class ResultComponent {
             strProps.put(ID, id);
         }
         this.dimensionDescription = dimensionDescription;
-        this.dimensions = dimensions;
+        this.timeSeries = dimensions == null ? null : TimeSeries.fromTuples(dimensions);
     }
 
     public ResultComponent(final String id, final Integer condID, final String combaseID,
@@ -104,7 +105,7 @@ public class ResultComponent {
         if (references != null)
             this.references = references;
         this.dimensionDescription = dimensionDescription;
-        this.dimensions = dimensions;
+        this.timeSeries = dimensions == null ? null : TimeSeries.fromTuples(dimensions);
     }
 
     public ResultComponent(final Element node) {
@@ -188,10 +189,14 @@ public class ResultComponent {
         final Element dimensionNode = (Element) dimensionNodes.item(0);
 
         final NodeList tupleNodes = dimensionNode.getElementsByTagName(Tuple.ELEMENT_NAME);
-        dimensions = new Tuple[tupleNodes.getLength()];
+        final double[] times = new double[tupleNodes.getLength()];
+        final double[] concentrations = new double[tupleNodes.getLength()];
         for (int i = 0; i < tupleNodes.getLength(); i++) {
-            dimensions[i] = new Tuple((Element) tupleNodes.item(i));
+            final NodeList valueNodes = ((Element) tupleNodes.item(i)).getElementsByTagName(AtomicValue.ELEMENT_NAME);
+            concentrations[i] = Double.parseDouble(valueNodes.item(0).getTextContent());
+            times[i] = Double.parseDouble(valueNodes.item(1).getTextContent());
         }
+        timeSeries = TimeSeries.wrap(times, concentrations);
     }
 
     public String getID() {
@@ -326,18 +331,55 @@ public class ResultComponent {
         this.dimensionDescription = dimensionDescription;
     }
 
+    /**
+     * Returns the values as tuples. The values are kept in a {@link TimeSeries}, so unlike in earlier versions the
+     * array returned is a copy: replacing its tuples does not change this component, which is changed with
+     * {@link #setDimensions(Tuple[])} or {@link #setTimeSeries(TimeSeries)} instead. The tuples are created once by
+     * the time series and the array is copied on every call; prefer {@link #getTimeSeries()}.
+     */
     public Tuple[] getDimensions() {
-        return dimensions;
+        return timeSeries == null ? null : timeSeries.toTuples();
     }
 
     public void setDimensions(final Tuple[] dimensions) {
-        this.dimensions = dimensions;
+        this.timeSeries = dimensions == null ? null : TimeSeries.fromTuples(dimensions);
+    }
+
+    /**
+     * @return deep copy of this component. The {@link TimeSeries} is immutable and thus shared, so the copy costs the
+     * same for any number of points.
+     */
+    ResultComponent copy() {
+        final ResultComponent copy = new ResultComponent(null, dimensionDescription, null);
+        copy.strProps.putAll(strProps);
+        copy.condID = condID;
+        copy.modelType = modelType;
+        copy.notes = notes;
+        if (references != null) {
+            copy.references = new Reference[references.length];
+            for (int i = 0; i < references.length; i++) {
+                final Reference ref = references[i];
+                copy.references[i] = SBMLFactory.createReference(ref.getAuthor(), ref.getYear(), ref.getTitle(),
+                        ref.getAbstractText(), ref.getJournal(), ref.getVolume(), ref.getIssue(), ref.getPage(),
+                        ref.getApprovalMode(), ref.getWebsite(), ref.getType(), ref.getComment());
+            }
+        }
+        copy.timeSeries = timeSeries;
+        return copy;
+    }
+
+    public TimeSeries getTimeSeries() {
+        return timeSeries;
+    }
+
+    public void setTimeSeries(final TimeSeries timeSeries) {
+        this.timeSeries = timeSeries;
     }
 
     @Override
     public String toString() {
         return "ResultComponent [id=" + strProps.get(ID) + ", dimensionDescription=" + dimensionDescription + ", " +
-                "dimension=" + Arrays.asList(dimensions) + "]";
+                "dimension=" + (timeSeries == null ? null : Arrays.asList(timeSeries.tuples())) + "]";
     }
 
     @Override
@@ -354,13 +396,12 @@ public class ResultComponent {
                 (modelType, other.modelType);
     }
 
-    public Element toNode(final Document doc) {
-
-        final Element node = doc.createElement(ELEMENT_NAME);
-        node.setAttribute(ID, strProps.get(ID));
+    /**
+     * Creates the annotation element with the metadata of this {@link ResultComponent}.
+     */
+    Element createAnnotationNode(final Document doc) {
 
         final Element annotation = doc.createElement(ANNOTATION);
-        node.appendChild(annotation);
 
         final Element metadata = doc.createElement(METADATA);
         annotation.appendChild(metadata);
@@ -431,18 +472,36 @@ public class ResultComponent {
             }
         }
 
+        return annotation;
+    }
+
+    public Element toNode(final Document doc) {
+
+        final Element node = doc.createElement(ELEMENT_NAME);
+        node.setAttribute(ID, strProps.get(ID));
+        node.appendChild(createAnnotationNode(doc));
+
         final Element dimensionDescriptionNode = doc.createElement(DIMENSION_DESCRIPTION);
         dimensionDescriptionNode.appendChild(dimensionDescription.toNode(doc));
         node.appendChild(dimensionDescriptionNode);
 
         final Element dimensionNode = doc.createElement(DIMENSION);
-        for (final Tuple tuple : getDimensions()) {
-            dimensionNode.appendChild(tuple.toNode(doc));
+        for (int i = 0; i < timeSeries.size(); i++) {
+            final Element tupleNode = doc.createElement(Tuple.ELEMENT_NAME);
+            tupleNode.appendChild(createAtomicValueNode(doc, timeSeries.getConcentration(i)));
+            tupleNode.appendChild(createAtomicValueNode(doc, timeSeries.getTime(i)));
+            dimensionNode.appendChild(tupleNode);
         }
         node.appendChild(dimensionNode);
 
         return node;
     }
+
+    private static Element createAtomicValueNode(final Document doc, final double value) {
+        final Element node = doc.createElement(AtomicValue.ELEMENT_NAME);
+        node.setTextContent(Double.toString(value));
+        return node;
+    }
 }
 
 
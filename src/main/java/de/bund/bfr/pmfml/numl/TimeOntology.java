@@ -58,6 +58,13 @@ public class TimeOntology {
         return unitDefinition;
     }
 
+    /**
+     * @return deep copy of this ontology
+     */
+    TimeOntology copy() {
+        return new TimeOntology(UnitDefinitionNuMLNode.copy(unitDefinition));
+    }
+
     @Override
     public String toString() {
         return "OntologyTerm [id=" + ID + ", term=" + TERM + ", sourceTermId=" + SOURCE_TERM_ID + ", ontologyURI=" + URI
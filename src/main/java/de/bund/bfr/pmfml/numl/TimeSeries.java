@@ -0,0 +1,151 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Time and concentration values of a {@link ResultComponent}, kept in two primitive arrays instead of a
+ * {@link Tuple} with two {@link AtomicValue} per point. Time series are immutable: the arrays are copied in and out.
+ */
+public class TimeSeries {
+
+    private final double[] times;
+    private final double[] concentrations;
+
+    // Created on the first call to toTuples()
+    private volatile Tuple[] tuples;
+
+    /**
+     * @param times          time values, copied
+     * @param concentrations concentration values, as many as time values, copied
+     * @throws IllegalArgumentException if the arrays have different lengths
+     */
+    public TimeSeries(final double[] times, final double[] concentrations) {
+        this(times, concentrations, true);
+    }
+
+    private TimeSeries(final double[] times, final double[] concentrations, final boolean copy) {
+        if (times.length != concentrations.length) {
+            throw new IllegalArgumentException("Different number of times (" + times.length + ") and concentrations ("
+                    + concentrations.length + ")");
+        }
+        this.times = copy ? times.clone() : times;
+        this.concentrations = copy ? concentrations.clone() : concentrations;
+    }
+
+    /**
+     * Takes arrays without copying them, for the readers that build them and do not use them afterwards.
+     */
+    static TimeSeries wrap(final double[] times, final double[] concentrations) {
+        return new TimeSeries(times, concentrations, false);
+    }
+
+    /**
+     * Copies the values of an array of tuples.
+     */
+    public static TimeSeries fromTuples(final Tuple[] tuples) {
+        final double[] times = new double[tuples.length];
+        final double[] concentrations = new double[tuples.length];
+        for (int i = 0; i < tuples.length; i++) {
+            times[i] = tuples[i].getTimeValue().getValue();
+            concentrations[i] = tuples[i].getConcValue().getValue();
+        }
+        return wrap(times, concentrations);
+    }
+
+    /** @return number of points */
+    public int size() {
+        return times.length;
+    }
+
+    public double getTime(final int index) {
+        return times[index];
+    }
+
+    public double getConcentration(final int index) {
+        return concentrations[index];
+    }
+
+    /**
+     * @return a copy of the time values. {@link #getTime(int)} reads them without copying
+     */
+    public double[] getTimes() {
+        return times.clone();
+    }
+
+    /**
+     * @return a copy of the concentration values. {@link #getConcentration(int)} reads them without copying
+     */
+    public double[] getConcentrations() {
+        return concentrations.clone();
+    }
+
+    /**
+     * Returns a {@link Tuple} for every point. The tuples are created on the first call and shared by the later ones,
+     * which only copy the array.
+     */
+    public Tuple[] toTuples() {
+        return tuples().clone();
+    }
+
+    /**
+     * @return the cached tuples, not to be modified
+     */
+    Tuple[] tuples() {
+        Tuple[] result = tuples;
+        if (result == null) {
+            result = new Tuple[times.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new Tuple(new AtomicValue(concentrations[i]), new AtomicValue(times[i]));
+            }
+            tuples = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TimeSeries [");
+        for (int i = 0; i < times.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format(Locale.ENGLISH, "(%.6f, %.6f)", times[i], concentrations[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+
+        final TimeSeries other = (TimeSeries) obj;
+        return Arrays.equals(times, other.times) && Arrays.equals(concentrations, other.concentrations);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(times) + Arrays.hashCode(concentrations);
+    }
+}
@@ -55,6 +55,14 @@ public class UnitDefinitionNuMLNode {
     this.node = node;
   }
 
+  /**
+   * @return deep copy of a unit definition
+   */
+  static PMFUnitDefinition copy(final PMFUnitDefinition unitDefinition) {
+    return new PMFUnitDefinition(unitDefinition.getId(), unitDefinition.getName(),
+        unitDefinition.getTransformationName(), unitDefinition.getUnits());
+  }
+
   public PMFUnitDefinition toPMFUnitDefinition() {
 
     final String id = node.getAttribute(ID_ATTR);
@@ -0,0 +1,840 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.sbml;
+
+import org.sbml.jsbml.ASTNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Formula of one or more arguments compiled into a flat array of instructions.
+ * <p>
+ * Evaluating an {@link ASTNode} directly walks the whole tree and looks up every name for every point. A compiled
+ * formula binds the coefficients and variables to their values once, folds the subexpressions without arguments
+ * into constants and evaluates the remaining instructions in a single loop. Evaluation does not allocate: every thread
+ * reuses its own operand stack. Compiled formulas are immutable and can be shared by threads.
+ * <pre>
+ * CompiledFormula formula = CompiledFormula.compile(rule, "Time", coefficients, variables);
+ * double value = formula.applyAsDouble(24.0);
+ * </pre>
+ * Numbers, names, arithmetic, powers, roots, logarithms, exponentials, trigonometric functions, abs, floor, ceiling,
+ * min, max, relations, logical operators and piecewise functions are supported. Relations and logical operators
+ * yield 1 or 0, and any value other than 0 is true.
+ * <p>
+ * Grids of arguments are best evaluated with {@link #applyAsDouble(double[], double[])}, which runs the instructions
+ * over blocks of arguments. Formulas of several arguments, e.g. secondary models of temperature and pH, are evaluated
+ * with {@link #evaluate(double[])} and {@link #evaluate(double[], double[], double[])}.
+ */
+public final class CompiledFormula implements DoubleUnaryOperator {
+
+    // Instructions. CONST and ARG are followed by the index of their constant or argument
+    private static final int CONST = 0;
+    private static final int ARG = 1;
+    private static final int ADD = 2;
+    private static final int SUB = 3;
+    private static final int MUL = 4;
+    private static final int DIV = 5;
+    private static final int POW = 6;
+    private static final int NEG = 7;
+    private static final int EXP = 8;
+    private static final int LN = 9;
+    private static final int LOG10 = 10;
+    private static final int LOG = 11;
+    private static final int SQRT = 12;
+    private static final int ROOT = 13;
+    private static final int ABS = 14;
+    private static final int SIN = 15;
+    private static final int COS = 16;
+    private static final int TAN = 17;
+    private static final int FLOOR = 18;
+    private static final int CEIL = 19;
+    private static final int MIN = 20;
+    private static final int MAX = 21;
+    private static final int LT = 22;
+    private static final int LEQ = 23;
+    private static final int GT = 24;
+    private static final int GEQ = 25;
+    private static final int EQ = 26;
+    private static final int NEQ = 27;
+    private static final int AND = 28;
+    private static final int OR = 29;
+    private static final int NOT = 30;
+    private static final int SELECT = 31;
+
+    private static final int INITIAL_STACK_SIZE = 16;
+    private static final ThreadLocal<double[]> STACK = ThreadLocal.withInitial(() -> new double[INITIAL_STACK_SIZE]);
+
+    private static final int BLOCK_SIZE = 256;
+    private static final ThreadLocal<double[][]> BLOCK_STACK = ThreadLocal.withInitial(() -> new double[0][]);
+
+    private final String[] arguments;
+    private final int[] code;
+    private final double[] constants;
+    private final int stackSize;
+
+    private CompiledFormula(final String[] arguments, final int[] code, final double[] constants,
+                            final int stackSize) {
+        this.arguments = arguments;
+        this.code = code;
+        this.constants = constants;
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * Compiles the formula of a model rule.
+     *
+     * @param argument     name of the argument, e.g. "Time"
+     * @param coefficients coefficients bound to their values
+     * @param variables    variables bound to their values. Variables without value are not bound.
+     * @throws IllegalArgumentException if the rule has names other than the argument that are not bound, or
+     *                                  unsupported functions
+     */
+    public static CompiledFormula compile(final ModelRule rule, final String argument,
+                                          final PMFCoefficient[] coefficients, final ModelVariable[] variables) {
+        final Map<String, Double> bindings = new HashMap<>();
+        for (final PMFCoefficient coefficient : coefficients) {
+            bindings.put(coefficient.getId(), coefficient.getValue());
+        }
+        for (final ModelVariable variable : variables) {
+            if (variable.getValue() != null) {
+                bindings.put(variable.getName(), variable.getValue());
+            }
+        }
+        return compile(rule.getRule().getMath(), argument, bindings);
+    }
+
+    /**
+     * Compiles a formula.
+     *
+     * @param argument name of the argument
+     * @param bindings values of the other names
+     * @throws IllegalArgumentException if the formula is null or has names other than the argument that are not
+     *                                  bound, or unsupported functions
+     */
+    public static CompiledFormula compile(final ASTNode math, final String argument,
+                                          final Map<String, Double> bindings) {
+        return compile(math, new String[]{argument}, bindings);
+    }
+
+    /**
+     * Compiles a formula of several arguments.
+     *
+     * @param arguments names of the arguments, in the order of the values passed to {@link #evaluate(double[])}
+     * @param bindings  values of the other names
+     * @throws IllegalArgumentException if the formula is null or has names other than the arguments that are not
+     *                                  bound, or unsupported functions
+     */
+    public static CompiledFormula compile(final ASTNode math, final String[] arguments,
+                                          final Map<String, Double> bindings) {
+        if (math == null) {
+            throw new IllegalArgumentException("No formula");
+        }
+
+        final Compiler compiler = new Compiler(arguments, bindings);
+        compiler.emit(math);
+        return new CompiledFormula(arguments.clone(), Arrays.copyOf(compiler.code, compiler.codeSize),
+                Arrays.copyOf(compiler.constants, compiler.numConstants), compiler.maxDepth);
+    }
+
+    /**
+     * @return name of the first argument, or null for formulas without arguments
+     */
+    public String getArgument() {
+        return arguments.length == 0 ? null : arguments[0];
+    }
+
+    public String[] getArguments() {
+        return arguments.clone();
+    }
+
+    /**
+     * @return whether the formula does not depend on its arguments
+     */
+    public boolean isConstant() {
+        return code.length == 2 && code[0] == CONST;
+    }
+
+    /**
+     * @return number of instructions
+     */
+    public int size() {
+        int size = 0;
+        for (int pc = 0; pc < code.length; pc++) {
+            if (code[pc] == CONST || code[pc] == ARG) {
+                pc++;
+            }
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @throws IllegalStateException if the formula has more than one argument
+     */
+    @Override
+    public double applyAsDouble(final double x) {
+        checkSingleArgument();
+        return run(code, 0, code.length, constants, x, null, getStack());
+    }
+
+    /**
+     * Evaluates the formula of several arguments.
+     *
+     * @param values values of the arguments, in the order of {@link #getArguments()}
+     * @throws IllegalArgumentException if there are less values than arguments
+     */
+    public double evaluate(final double[] values) {
+        checkValues(values);
+        return run(code, 0, code.length, constants, values.length == 0 ? Double.NaN : values[0], values,
+                getStack());
+    }
+
+    /**
+     * Evaluates the formula for many arguments at once.
+     * <p>
+     * The arguments are evaluated in blocks: every instruction runs over a whole block before the next one, so the
+     * cost of dispatching the instructions is shared by the points of the block and the loops over the blocks can be
+     * vectorized by the JIT compiler. Like {@link #applyAsDouble(double)} it does not allocate.
+     *
+     * @param x       arguments
+     * @param results array where the values are written. It may be <code>x</code> itself.
+     * @throws IllegalArgumentException if <code>results</code> is shorter than <code>x</code>
+     * @throws IllegalStateException    if the formula has more than one argument
+     */
+    public void applyAsDouble(final double[] x, final double[] results) {
+        checkSingleArgument();
+        evaluateBlocks(x, null, results);
+    }
+
+    /**
+     * Evaluates the formula of several arguments over a grid of the first argument, in blocks like
+     * {@link #applyAsDouble(double[], double[])}.
+     *
+     * @param x       values of the first argument
+     * @param values  values of the other arguments, in the order of {@link #getArguments()}. The first value is
+     *                ignored.
+     * @param results array where the values are written. It may be <code>x</code> itself.
+     * @throws IllegalArgumentException if there are less values than arguments or <code>results</code> is shorter than
+     *                                  <code>x</code>
+     */
+    public void evaluate(final double[] x, final double[] values, final double[] results) {
+        checkValues(values);
+        evaluateBlocks(x, values, results);
+    }
+
+    private void evaluateBlocks(final double[] x, final double[] values, final double[] results) {
+        if (results.length < x.length) {
+            throw new IllegalArgumentException("Results shorter than arguments: " + results.length + " < " + x.length);
+        }
+
+        double[][] stack = BLOCK_STACK.get();
+        if (stack.length < stackSize) {
+            stack = new double[stackSize][BLOCK_SIZE];
+            BLOCK_STACK.set(stack);
+        }
+        for (int from = 0; from < x.length; from += BLOCK_SIZE) {
+            final int n = Math.min(BLOCK_SIZE, x.length - from);
+            runBlock(x, from, n, values, stack);
+            System.arraycopy(stack[0], 0, results, from, n);
+        }
+    }
+
+    private double[] getStack() {
+        double[] stack = STACK.get();
+        if (stack.length < stackSize) {
+            stack = new double[stackSize];
+            STACK.set(stack);
+        }
+        return stack;
+    }
+
+    private void checkSingleArgument() {
+        if (arguments.length > 1) {
+            throw new IllegalStateException("Formula of " + arguments.length + " arguments");
+        }
+    }
+
+    private void checkValues(final double[] values) {
+        if (values.length < arguments.length) {
+            throw new IllegalArgumentException(values.length + " values for " + arguments.length + " arguments");
+        }
+    }
+
+    /**
+     * Runs a sequence of instructions leaving a single value.
+     *
+     * @param x      value of the first argument
+     * @param values values of the other arguments. Only read for formulas of several arguments.
+     */
+    private static double run(final int[] code, final int from, final int to, final double[] constants,
+                              final double x, final double[] values, final double[] stack) {
+        int sp = -1;
+        for (int pc = from; pc < to; pc++) {
+            switch (code[pc]) {
+                case CONST:
+                    stack[++sp] = constants[code[++pc]];
+                    break;
+                case ARG:
+                    final int index = code[++pc];
+                    stack[++sp] = index == 0 ? x : values[index];
+                    break;
+                case ADD:
+                    sp--;
+                    stack[sp] += stack[sp + 1];
+                    break;
+                case SUB:
+                    sp--;
+                    stack[sp] -= stack[sp + 1];
+                    break;
+                case MUL:
+                    sp--;
+                    stack[sp] *= stack[sp + 1];
+                    break;
+                case DIV:
+                    sp--;
+                    stack[sp] /= stack[sp + 1];
+                    break;
+                case POW:
+                    sp--;
+                    stack[sp] = Math.pow(stack[sp], stack[sp + 1]);
+                    break;
+                case NEG:
+                    stack[sp] = -stack[sp];
+                    break;
+                case EXP:
+                    stack[sp] = Math.exp(stack[sp]);
+                    break;
+                case LN:
+                    stack[sp] = Math.log(stack[sp]);
+                    break;
+                case LOG10:
+                    stack[sp] = Math.log10(stack[sp]);
+                    break;
+                case LOG:
+                    // Base and value
+                    sp--;
+                    stack[sp] = Math.log(stack[sp + 1]) / Math.log(stack[sp]);
+                    break;
+                case SQRT:
+                    stack[sp] = Math.sqrt(stack[sp]);
+                    break;
+                case ROOT:
+                    // Degree and radicand
+                    sp--;
+                    stack[sp] = Math.pow(stack[sp + 1], 1 / stack[sp]);
+                    break;
+                case ABS:
+                    stack[sp] = Math.abs(stack[sp]);
+                    break;
+                case SIN:
+                    stack[sp] = Math.sin(stack[sp]);
+                    break;
+                case COS:
+                    stack[sp] = Math.cos(stack[sp]);
+                    break;
+                case TAN:
+                    stack[sp] = Math.tan(stack[sp]);
+                    break;
+                case FLOOR:
+                    stack[sp] = Math.floor(stack[sp]);
+                    break;
+                case CEIL:
+                    stack[sp] = Math.ceil(stack[sp]);
+                    break;
+                case MIN:
+                    sp--;
+                    stack[sp] = Math.min(stack[sp], stack[sp + 1]);
+                    break;
+                case MAX:
+                    sp--;
+                    stack[sp] = Math.max(stack[sp], stack[sp + 1]);
+                    break;
+                case LT:
+                    sp--;
+                    stack[sp] = stack[sp] < stack[sp + 1] ? 1 : 0;
+                    break;
+                case LEQ:
+                    sp--;
+                    stack[sp] = stack[sp] <= stack[sp + 1] ? 1 : 0;
+                    break;
+                case GT:
+                    sp--;
+                    stack[sp] = stack[sp] > stack[sp + 1] ? 1 : 0;
+                    break;
+                case GEQ:
+                    sp--;
+                    stack[sp] = stack[sp] >= stack[sp + 1] ? 1 : 0;
+                    break;
+                case EQ:
+                    sp--;
+                    stack[sp] = stack[sp] == stack[sp + 1] ? 1 : 0;
+                    break;
+                case NEQ:
+                    sp--;
+                    stack[sp] = stack[sp] != stack[sp + 1] ? 1 : 0;
+                    break;
+                case AND:
+                    sp--;
+                    stack[sp] = stack[sp] != 0 && stack[sp + 1] != 0 ? 1 : 0;
+                    break;
+                case OR:
+                    sp--;
+                    stack[sp] = stack[sp] != 0 || stack[sp + 1] != 0 ? 1 : 0;
+                    break;
+                case NOT:
+                    stack[sp] = stack[sp] == 0 ? 1 : 0;
+                    break;
+                case SELECT:
+                    // Value, condition and value otherwise
+                    sp -= 2;
+                    stack[sp] = stack[sp + 1] != 0 ? stack[sp] : stack[sp + 2];
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid instruction: " + code[pc]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Runs the instructions over the block of <code>n</code> arguments starting at <code>from</code>, leaving the
+     * values in the first row of the stack.
+     */
+    private void runBlock(final double[] x, final int from, final int n, final double[] values,
+                          final double[][] stack) {
+        int sp = -1;
+        for (int pc = 0; pc < code.length; pc++) {
+            final int instruction = code[pc];
+            if (instruction == CONST) {
+                Arrays.fill(stack[++sp], 0, n, constants[code[++pc]]);
+                continue;
+            }
+            if (instruction == ARG) {
+                final int index = code[++pc];
+                if (index == 0) {
+                    System.arraycopy(x, from, stack[++sp], 0, n);
+                } else {
+                    Arrays.fill(stack[++sp], 0, n, values[index]);
+                }
+                continue;
+            }
+            if (instruction == SELECT) {
+                // Value, condition and value otherwise
+                final double[] a = stack[sp - 2];
+                final double[] b = stack[sp - 1];
+                final double[] c = stack[sp];
+                for (int i = 0; i < n; i++) {
+                    a[i] = b[i] != 0 ? a[i] : c[i];
+                }
+                sp -= 2;
+                continue;
+            }
+
+            final double[] a = stack[sp];
+            switch (instruction) {
+                case NEG:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = -a[i];
+                    }
+                    continue;
+                case EXP:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.exp(a[i]);
+                    }
+                    continue;
+                case LN:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.log(a[i]);
+                    }
+                    continue;
+                case LOG10:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.log10(a[i]);
+                    }
+                    continue;
+                case SQRT:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.sqrt(a[i]);
+                    }
+                    continue;
+                case ABS:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.abs(a[i]);
+                    }
+                    continue;
+                case SIN:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.sin(a[i]);
+                    }
+                    continue;
+                case COS:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.cos(a[i]);
+                    }
+                    continue;
+                case TAN:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.tan(a[i]);
+                    }
+                    continue;
+                case FLOOR:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.floor(a[i]);
+                    }
+                    continue;
+                case CEIL:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = Math.ceil(a[i]);
+                    }
+                    continue;
+                case NOT:
+                    for (int i = 0; i < n; i++) {
+                        a[i] = a[i] == 0 ? 1 : 0;
+                    }
+                    continue;
+                default:
+                    break;
+            }
+
+            // Binary instructions leave their value in the lower operand
+            final double[] l = stack[--sp];
+            final double[] r = a;
+            switch (instruction) {
+                case ADD:
+                    for (int i = 0; i < n; i++) {
+                        l[i] += r[i];
+                    }
+                    break;
+                case SUB:
+                    for (int i = 0; i < n; i++) {
+                        l[i] -= r[i];
+                    }
+                    break;
+                case MUL:
+                    for (int i = 0; i < n; i++) {
+                        l[i] *= r[i];
+                    }
+                    break;
+                case DIV:
+                    for (int i = 0; i < n; i++) {
+                        l[i] /= r[i];
+                    }
+                    break;
+                case POW:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = Math.pow(l[i], r[i]);
+                    }
+                    break;
+                case LOG:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = Math.log(r[i]) / Math.log(l[i]);
+                    }
+                    break;
+                case ROOT:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = Math.pow(r[i], 1 / l[i]);
+                    }
+                    break;
+                case MIN:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = Math.min(l[i], r[i]);
+                    }
+                    break;
+                case MAX:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = Math.max(l[i], r[i]);
+                    }
+                    break;
+                case LT:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] < r[i] ? 1 : 0;
+                    }
+                    break;
+                case LEQ:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] <= r[i] ? 1 : 0;
+                    }
+                    break;
+                case GT:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] > r[i] ? 1 : 0;
+                    }
+                    break;
+                case GEQ:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] >= r[i] ? 1 : 0;
+                    }
+                    break;
+                case EQ:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] == r[i] ? 1 : 0;
+                    }
+                    break;
+                case NEQ:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] != r[i] ? 1 : 0;
+                    }
+                    break;
+                case AND:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] != 0 && r[i] != 0 ? 1 : 0;
+                    }
+                    break;
+                case OR:
+                    for (int i = 0; i < n; i++) {
+                        l[i] = l[i] != 0 || r[i] != 0 ? 1 : 0;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid instruction: " + instruction);
+            }
+        }
+    }
+
+    /**
+     * Emits the instructions of a tree in postfix order, folding the subtrees without arguments.
+     */
+    private static class Compiler {
+
+        final String[] arguments;
+        final Map<String, Double> bindings;
+
+        int[] code = new int[32];
+        int codeSize;
+        double[] constants = new double[8];
+        int numConstants;
+
+        int depth;
+        int maxDepth;
+
+        Compiler(final String[] arguments, final Map<String, Double> bindings) {
+            this.arguments = arguments;
+            this.bindings = bindings;
+        }
+
+        /**
+         * @return whether the node is constant, i.e. it does not depend on the arguments
+         */
+        boolean emit(final ASTNode node) {
+            final int start = codeSize;
+            final boolean constant = emitNode(node);
+
+            // Folds constant subtrees into a single constant
+            if (constant && codeSize - start > 2) {
+                final double value = run(code, start, codeSize, constants, Double.NaN, null,
+                        new double[maxDepth]);
+                codeSize = start;
+                depth--;
+                emitConstant(value);
+            }
+            return constant;
+        }
+
+        private boolean emitNode(final ASTNode node) {
+            final int numChildren = node.getChildCount();
+
+            switch (node.getType()) {
+                case INTEGER:
+                    emitConstant(node.getInteger());
+                    return true;
+                case REAL:
+                case REAL_E:
+                case RATIONAL:
+                    emitConstant(node.getReal());
+                    return true;
+                case CONSTANT_E:
+                    emitConstant(Math.E);
+                    return true;
+                case CONSTANT_PI:
+                    emitConstant(Math.PI);
+                    return true;
+                case CONSTANT_TRUE:
+                    emitConstant(1);
+                    return true;
+                case CONSTANT_FALSE:
+                    emitConstant(0);
+                    return true;
+                case NAME:
+                case NAME_TIME:
+                    return emitName(node.getName());
+                case PLUS:
+                    return emitChain(node, ADD, 0);
+                case TIMES:
+                    return emitChain(node, MUL, 1);
+                case MINUS:
+                    return numChildren == 1 ? emitUnary(node, NEG) : emitChain(node, SUB, 0);
+                case DIVIDE:
+                    return emitBinary(node, DIV);
+                case POWER:
+                case FUNCTION_POWER:
+                    return emitBinary(node, POW);
+                case FUNCTION_EXP:
+                    return emitUnary(node, EXP);
+                case FUNCTION_LN:
+                    return emitUnary(node, LN);
+                case FUNCTION_LOG:
+                    // Without base the logarithm is decimal
+                    return numChildren == 1 ? emitUnary(node, LOG10) : emitBinary(node, LOG);
+                case FUNCTION_ROOT:
+                    // Without degree the root is square
+                    return numChildren == 1 ? emitUnary(node, SQRT) : emitBinary(node, ROOT);
+                case FUNCTION_ABS:
+                    return emitUnary(node, ABS);
+                case FUNCTION_SIN:
+                    return emitUnary(node, SIN);
+                case FUNCTION_COS:
+                    return emitUnary(node, COS);
+                case FUNCTION_TAN:
+                    return emitUnary(node, TAN);
+                case FUNCTION_FLOOR:
+                    return emitUnary(node, FLOOR);
+                case FUNCTION_CEILING:
+                    return emitUnary(node, CEIL);
+                case FUNCTION_MIN:
+                    return emitChain(node, MIN, Double.NaN);
+                case FUNCTION_MAX:
+                    return emitChain(node, MAX, Double.NaN);
+                case RELATIONAL_LT:
+                    return emitBinary(node, LT);
+                case RELATIONAL_LEQ:
+                    return emitBinary(node, LEQ);
+                case RELATIONAL_GT:
+                    return emitBinary(node, GT);
+                case RELATIONAL_GEQ:
+                    return emitBinary(node, GEQ);
+                case RELATIONAL_EQ:
+                    return emitBinary(node, EQ);
+                case RELATIONAL_NEQ:
+                    return emitBinary(node, NEQ);
+                case LOGICAL_AND:
+                    return emitChain(node, AND, 1);
+                case LOGICAL_OR:
+                    return emitChain(node, OR, 0);
+                case LOGICAL_NOT:
+                    return emitUnary(node, NOT);
+                case FUNCTION_PIECEWISE:
+                    return emitPiecewise(node, 0);
+                default:
+                    throw new IllegalArgumentException("Unsupported " + node.getType() + ": " + node);
+            }
+        }
+
+        private boolean emitName(final String name) {
+            for (int i = 0; i < arguments.length; i++) {
+                if (name.equals(arguments[i])) {
+                    emit(ARG, 1);
+                    emitOperand(i);
+                    return false;
+                }
+            }
+
+            final Double value = bindings.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Unbound name: " + name);
+            }
+            emitConstant(value);
+            return true;
+        }
+
+        private boolean emitUnary(final ASTNode node, final int instruction) {
+            checkChildren(node, 1);
+            final boolean constant = emit(node.getChild(0));
+            emit(instruction, 0);
+            return constant;
+        }
+
+        private boolean emitBinary(final ASTNode node, final int instruction) {
+            checkChildren(node, 2);
+            final boolean constant = emit(node.getChild(0)) & emit(node.getChild(1));
+            emit(instruction, -1);
+            return constant;
+        }
+
+        /**
+         * Emits an operator of n operands, e.g. a + b + c, as a chain of binary instructions.
+         *
+         * @param empty value of the operator without operands
+         */
+        private boolean emitChain(final ASTNode node, final int instruction, final double empty) {
+            final int numChildren = node.getChildCount();
+            if (numChildren == 0) {
+                emitConstant(empty);
+                return true;
+            }
+
+            boolean constant = emit(node.getChild(0));
+            for (int i = 1; i < numChildren; i++) {
+                constant &= emit(node.getChild(i));
+                emit(instruction, -1);
+            }
+            return constant;
+        }
+
+        /**
+         * Emits the pieces from <code>i</code> on: value 1, condition 1, value 2, condition 2, ..., and optionally the
+         * value otherwise. Pieces without a true condition nor a value otherwise are NaN.
+         */
+        private boolean emitPiecewise(final ASTNode node, final int i) {
+            final int numChildren = node.getChildCount();
+            if (i == numChildren) {
+                emitConstant(Double.NaN);
+                return true;
+            }
+            if (i == numChildren - 1) {
+                return emit(node.getChild(i));
+            }
+
+            final boolean constant = emit(node.getChild(i)) & emit(node.getChild(i + 1)) & emitPiecewise(node, i + 2);
+            emit(SELECT, -2);
+            return constant;
+        }
+
+        private static void checkChildren(final ASTNode node, final int numChildren) {
+            if (node.getChildCount() != numChildren) {
+                throw new IllegalArgumentException(node.getType() + " with " + node.getChildCount() + " operands");
+            }
+        }
+
+        private void emitConstant(final double value) {
+            if (numConstants == constants.length) {
+                constants = Arrays.copyOf(constants, numConstants * 2);
+            }
+            constants[numConstants] = value;
+            emit(CONST, 1);
+            emitOperand(numConstants++);
+        }
+
+        /**
+         * @param stackChange change in the depth of the stack after the instruction
+         */
+        private void emit(final int instruction, final int stackChange) {
+            emitOperand(instruction);
+            depth += stackChange;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private void emitOperand(final int operand) {
+            if (codeSize == code.length) {
+                code = Arrays.copyOf(code, codeSize * 2);
+            }
+            code[codeSize++] = operand;
+        }
+    }
+}
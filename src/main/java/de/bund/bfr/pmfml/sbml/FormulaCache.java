@@ -0,0 +1,159 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.sbml;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.JSBML;
+import org.sbml.jsbml.text.parser.ParseException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded LRU cache of parsed formulas, keyed by the formula string.
+ * <p>
+ * Archives hold thousands of rules that share a few formulas, e.g. Baranyi, Gompertz or square root models, with
+ * different coefficient values. Parsing a formula costs much more than copying its tree, so {@link ModelRule} parses
+ * every formula once and clones the cached tree afterwards. Every caller gets its own clone: trees are attached to
+ * their rules and may be modified. The cached trees are private copies never handed out.
+ * <p>
+ * The shared cache keeps up to {@link #DEFAULT_MAX_FORMULAS} formulas. It can be replaced or disabled with
+ * {@link #setShared(FormulaCache)}:
+ * <pre>
+ * FormulaCache.setShared(new FormulaCache(1024));
+ * </pre>
+ */
+public class FormulaCache {
+
+    public static final int DEFAULT_MAX_FORMULAS = 256;
+
+    private static volatile FormulaCache shared = new FormulaCache(DEFAULT_MAX_FORMULAS);
+
+    private final int maxFormulas;
+
+    // Access ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, ASTNode> formulas = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxFormulas maximum number of cached formulas
+     */
+    public FormulaCache(final int maxFormulas) {
+        if (maxFormulas <= 0) {
+            throw new IllegalArgumentException("maxFormulas must be positive: " + maxFormulas);
+        }
+        this.maxFormulas = maxFormulas;
+    }
+
+    /**
+     * @return the cache used by {@link ModelRule} or null if caching is disabled
+     */
+    public static FormulaCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Sets the cache used by {@link ModelRule}. Null disables caching.
+     */
+    public static void setShared(final FormulaCache cache) {
+        shared = cache;
+    }
+
+    /**
+     * Parses a formula with the shared cache, or with {@link JSBML#parseFormula(String)} if caching is disabled.
+     */
+    static ASTNode parseShared(final String formula) throws ParseException {
+        final FormulaCache cache = shared;
+        return cache == null ? JSBML.parseFormula(formula) : cache.parse(formula);
+    }
+
+    /**
+     * Returns a clone of the cached tree of a formula, parsing and caching it if missing. Formulas that cannot be
+     * parsed are not cached.
+     */
+    public ASTNode parse(final String formula) throws ParseException {
+        final ASTNode cached = get(formula);
+        if (cached != null) {
+            return cached.clone();
+        }
+
+        // Parsed outside the lock. Concurrent misses of the same formula may parse it twice.
+        final ASTNode math = JSBML.parseFormula(formula);
+        put(formula, math.clone());
+        return math;
+    }
+
+    private synchronized ASTNode get(final String formula) {
+        final ASTNode math = formulas.get(formula);
+        if (math == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return math;
+    }
+
+    private synchronized void put(final String formula, final ASTNode math) {
+        formulas.put(formula, math);
+
+        final Iterator<ASTNode> iterator = formulas.values().iterator();
+        while (formulas.size() > maxFormulas && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes every formula. The statistics are kept.
+     */
+    public synchronized void invalidateAll() {
+        formulas.clear();
+    }
+
+    /**
+     * @return number of cached formulas
+     */
+    public synchronized int getNumFormulas() {
+        return formulas.size();
+    }
+
+    public int getMaxFormulas() {
+        return maxFormulas;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FormulaCache [formulas=" + formulas.size() + ", maxFormulas=" + maxFormulas + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
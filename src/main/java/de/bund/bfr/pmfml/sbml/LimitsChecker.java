@@ -0,0 +1,199 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.sbml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Range checker of condition vectors compiled from the limits of a model.
+ * <p>
+ * Checking a vector against a {@link LimitsConstraint} walks the math of the constraint. A checker extracts the
+ * {@link Limits} once and keeps, per limit, the index of its variable in the vectors and its bounds in flat arrays.
+ * Checks are then a few comparisons per limit and do not allocate.
+ * <p>
+ * A check returns a bitmask of the violated limits: bit <code>i</code> is set if the vector is outside limit
+ * <code>i</code>, in the order of {@link #getLimits()}. A mask of 0 means that the vector is inside every limit. NaN
+ * values violate their limits. Limits of variables that are not in the vectors, e.g. of coefficients, are ignored.
+ * <pre>
+ * LimitsChecker checker = new LimitsChecker(new String[]{"Temperature", "pH", "aw", "Time"}, constraints);
+ * checker.check(vectors, 4, masks);
+ * </pre>
+ */
+public final class LimitsChecker {
+
+    /** Maximum number of limits, the bits of a mask. */
+    public static final int MAX_LIMITS = Long.SIZE;
+
+    private final String[] variables;
+    private final Limits[] limits;
+
+    private final int[] indices;
+    private final double[] mins;
+    private final double[] maxs;
+
+    /**
+     * @param variables names of the variables, in the order of the values of the vectors
+     * @param limits    limits of the model
+     * @throws IllegalArgumentException if more than {@link #MAX_LIMITS} limits are of the variables
+     */
+    public LimitsChecker(final String[] variables, final Limits[] limits) {
+        this.variables = variables.clone();
+
+        final List<Limits> checked = new ArrayList<>();
+        final List<Integer> checkedIndices = new ArrayList<>();
+        for (final Limits limit : limits) {
+            final int index = Arrays.asList(variables).indexOf(limit.getVar());
+            if (index >= 0) {
+                checked.add(limit);
+                checkedIndices.add(index);
+            }
+        }
+        if (checked.size() > MAX_LIMITS) {
+            throw new IllegalArgumentException("More than " + MAX_LIMITS + " limits: " + checked.size());
+        }
+
+        this.limits = checked.toArray(new Limits[checked.size()]);
+        indices = new int[this.limits.length];
+        mins = new double[this.limits.length];
+        maxs = new double[this.limits.length];
+        for (int i = 0; i < this.limits.length; i++) {
+            indices[i] = checkedIndices.get(i);
+            mins[i] = this.limits[i].getMin() == null ? Double.NEGATIVE_INFINITY : this.limits[i].getMin();
+            maxs[i] = this.limits[i].getMax() == null ? Double.POSITIVE_INFINITY : this.limits[i].getMax();
+        }
+    }
+
+    /**
+     * @param variables   names of the variables, in the order of the values of the vectors
+     * @param constraints constraints of the model
+     * @throws IllegalArgumentException if more than {@link #MAX_LIMITS} limits are of the variables
+     */
+    public LimitsChecker(final String[] variables, final LimitsConstraint[] constraints) {
+        this(variables, toLimits(constraints));
+    }
+
+    private static Limits[] toLimits(final LimitsConstraint[] constraints) {
+        final Limits[] limits = new Limits[constraints.length];
+        for (int i = 0; i < constraints.length; i++) {
+            limits[i] = constraints[i].getLimits();
+        }
+        return limits;
+    }
+
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    /**
+     * @return checked limits, in the order of the bits of the masks
+     */
+    public Limits[] getLimits() {
+        return limits.clone();
+    }
+
+    /**
+     * @return mask of all the checked limits
+     */
+    public long getAllMask() {
+        return limits.length == MAX_LIMITS ? -1L : (1L << limits.length) - 1;
+    }
+
+    /**
+     * Checks a vector.
+     *
+     * @return bitmask of the violated limits
+     */
+    public long check(final double[] vector) {
+        return check(vector, 0);
+    }
+
+    /**
+     * @return whether the vector is inside every limit
+     */
+    public boolean isValid(final double[] vector) {
+        return check(vector, 0) == 0;
+    }
+
+    /**
+     * Checks many vectors.
+     *
+     * @param masks array where the bitmask of each vector is written
+     * @return number of vectors inside every limit
+     * @throws IllegalArgumentException if <code>masks</code> is shorter than <code>vectors</code>
+     */
+    public int check(final double[][] vectors, final long[] masks) {
+        checkMasks(vectors.length, masks);
+
+        int numValid = 0;
+        for (int v = 0; v < vectors.length; v++) {
+            masks[v] = check(vectors[v], 0);
+            if (masks[v] == 0) {
+                numValid++;
+            }
+        }
+        return numValid;
+    }
+
+    /**
+     * Checks many vectors stored one after another in a flat array, e.g. [T0, pH0, T1, pH1, ...]. Large sets of
+     * vectors are best kept like this to avoid an array per vector.
+     *
+     * @param values    values of the vectors
+     * @param dimension number of values of each vector, at least the number of variables
+     * @param masks     array where the bitmask of each vector is written
+     * @return number of vectors inside every limit
+     * @throws IllegalArgumentException if the dimension is less than the number of variables, the number of values is
+     *                                  not a multiple of the dimension or <code>masks</code> is too short
+     */
+    public int check(final double[] values, final int dimension, final long[] masks) {
+        if (dimension < variables.length || dimension == 0 || values.length % dimension != 0) {
+            throw new IllegalArgumentException(
+                    values.length + " values of dimension " + dimension + " for " + variables.length + " variables");
+        }
+        final int numVectors = values.length / dimension;
+        checkMasks(numVectors, masks);
+
+        int numValid = 0;
+        for (int v = 0; v < numVectors; v++) {
+            masks[v] = check(values, v * dimension);
+            if (masks[v] == 0) {
+                numValid++;
+            }
+        }
+        return numValid;
+    }
+
+    private long check(final double[] values, final int offset) {
+        long mask = 0;
+        for (int i = 0; i < indices.length; i++) {
+            final double value = values[offset + indices[i]];
+            // Written so that NaN fails
+            if (!(value >= mins[i] && value <= maxs[i])) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    private static void checkMasks(final int numVectors, final long[] masks) {
+        if (masks.length < numVectors) {
+            throw new IllegalArgumentException("Masks shorter than vectors: " + masks.length + " < " + numVectors);
+        }
+    }
+}
@@ -20,7 +20,6 @@ import de.bund.bfr.pmfml.ModelClass;
 import org.sbml.jsbml.ASTNode;
 import org.sbml.jsbml.Annotation;
 import org.sbml.jsbml.AssignmentRule;
-import org.sbml.jsbml.JSBML;
 import org.sbml.jsbml.text.parser.ParseException;
 import org.sbml.jsbml.xml.XMLNode;
 import org.sbml.jsbml.xml.XMLTriple;
@@ -58,7 +57,7 @@ public class ModelRule {
 
     ASTNode math = null;
     try {
-      math = JSBML.parseFormula(formula);
+      math = FormulaCache.parseShared(formula);
     } catch (ParseException e) {
       // TODO Auto-generated catch block
       e.printStackTrace();
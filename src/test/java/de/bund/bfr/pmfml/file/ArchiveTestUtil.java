@@ -0,0 +1,141 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks on the zip entries of PMF and PMFX files shared by the tests of the *ModelFile classes.
+ */
+class ArchiveTestUtil {
+
+    private ArchiveTestUtil() {
+    }
+
+    /**
+     * Checks that two files have the same entries in the same order with the same content, including the manifest,
+     * the metadata and the readme. Whole files differ in the timestamps.
+     */
+    static void assertSameEntries(Path path, Path otherPath) throws IOException {
+        try (ZipFile zipFile = new ZipFile(path.toFile()); ZipFile otherZipFile = new ZipFile(otherPath.toFile())) {
+            List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+            List<? extends ZipEntry> otherEntries = Collections.list(otherZipFile.entries());
+            assertEquals(getNames(entries), getNames(otherEntries));
+
+            for (int i = 0; i < entries.size(); i++) {
+                assertArrayEquals(entries.get(i).getName(), readEntry(zipFile, entries.get(i)),
+                        readEntry(otherZipFile, otherEntries.get(i)));
+            }
+        }
+    }
+
+    /**
+     * @return names of the NuML and SBML entries in the order of the file
+     */
+    static List<String> getDocNames(Path path) throws IOException {
+        List<String> docNames = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (entry.getName().endsWith(".numl") || entry.getName().endsWith(".sbml")) {
+                    docNames.add(entry.getName());
+                }
+            }
+        }
+        return docNames;
+    }
+
+    static byte[] readEntry(Path path, String entryName) throws IOException {
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            ZipEntry entry = zipFile.getEntry(entryName);
+            assertNotNull(entryName, entry);
+            return readEntry(zipFile, entry);
+        }
+    }
+
+    /**
+     * Checks that no copy of an edited file, or scratch archive of a sink, is left next to it.
+     */
+    static void assertNoCopies(Path path) throws IOException {
+        try (Stream<Path> files = Files.list(path.toAbsolutePath().getParent())) {
+            assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")
+                    && file.getFileName().toString().startsWith(path.getFileName().toString())));
+        }
+    }
+
+    private static List<String> getNames(List<? extends ZipEntry> entries) {
+        List<String> names = new ArrayList<>(entries.size());
+        entries.forEach(entry -> names.add(entry.getName()));
+        return names;
+    }
+
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    /**
+     * Counts the entries and cancels a token after a number of them.
+     */
+    static class CountingListener implements ProgressListener {
+
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+
+        private final CancellationToken token;
+        private final int maxEntries;
+
+        CountingListener(CancellationToken token, int maxEntries) {
+            this.token = token;
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        public void entryStarted(String entryName, long size) {
+            started.incrementAndGet();
+        }
+
+        @Override
+        public void entryFinished(String entryName, long size, long nanos, boolean successful) {
+            assertTrue(successful);
+            bytes.addAndGet(size);
+            if (finished.incrementAndGet() == maxEntries) {
+                token.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.model.ExperimentalData;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class BatchArchiveLoaderTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("batch");
+        for (int i = 0; i < 10; i++) {
+            List<ExperimentalData> dataRecords = new ArrayList<>();
+            for (int j = 0; j <= i; j++) {
+                dataRecords.add(new ExperimentalData("data" + j + ".numl", ModelTestUtil.createDummyData()));
+            }
+            ExperimentalDataFile.write(directory.resolve("data" + i + ".pmf"), dataRecords);
+        }
+
+        // Corrupt archive and file not matching the glob
+        Files.write(directory.resolve("corrupt.pmf"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("notes.txt"), Collections.singletonList("not an archive"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        assertEquals(11, BatchArchiveLoader.find(directory, BatchArchiveLoader.DEFAULT_GLOB).size());
+
+        try (BatchArchiveLoader loader = new BatchArchiveLoader(2)) {
+            List<BatchArchiveLoader.Result> results = loader.load(directory).collect(Collectors.toList());
+            assertEquals(11, results.size());
+
+            // The corrupt archive fails alone
+            List<BatchArchiveLoader.Result> failed = results.stream().filter(result -> !result.isSuccessful())
+                    .collect(Collectors.toList());
+            assertEquals(1, failed.size());
+            assertEquals("corrupt.pmf", failed.get(0).getPath().getFileName().toString());
+            assertNotNull(failed.get(0).getError());
+
+            int numModels = 0;
+            for (BatchArchiveLoader.Result result : results) {
+                if (result.isSuccessful()) {
+                    assertEquals(ModelType.EXPERIMENTAL_DATA, result.getModelType());
+                    assertTrue(result.getModels().get(0) instanceof ExperimentalData);
+                    numModels += result.getModels().size();
+                }
+            }
+            assertEquals(55, numModels);
+
+            BatchArchiveLoader.Statistics statistics = loader.getStatistics();
+            assertEquals(11, statistics.getNumFiles());
+            assertEquals(1, statistics.getNumFailedFiles());
+            assertEquals(55, statistics.getNumModels());
+            assertTrue(statistics.getNumBytes() > 0);
+            assertTrue(statistics.getFilesPerSecond() > 0);
+        }
+    }
+}
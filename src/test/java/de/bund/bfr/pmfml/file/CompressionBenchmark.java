@@ -0,0 +1,91 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.model.ExperimentalData;
+import de.bund.bfr.pmfml.numl.NuMLReaderTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the size and the write and read times of files written with the {@link CompressionStrategy} presets, and
+ * of reading stored entries from a {@link ReadOptions#setMemoryMapped(boolean) memory mapping}. It is not run with the
+ * unit tests. Run it with the test classpath, e.g.
+ * <code>java -cp ... de.bund.bfr.pmfml.file.CompressionBenchmark</code>.
+ */
+public class CompressionBenchmark {
+
+    private static final int NUM_RECORDS = 50;
+    private static final int NUM_TUPLES = 2_000;
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        List<ExperimentalData> dataRecords = new ArrayList<>();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            dataRecords.add(new ExperimentalData("data" + i + ".numl", NuMLReaderTest.createDocument(NUM_TUPLES)));
+        }
+
+        String[] names = {"default", "fastest read", "fastest read, mapped", "smallest"};
+        CompressionStrategy[] strategies = {CompressionStrategy.DEFAULT, CompressionStrategy.FASTEST_READ,
+                CompressionStrategy.FASTEST_READ, CompressionStrategy.SMALLEST};
+        boolean[] mapped = {false, false, true, false};
+
+        System.out.println("strategy\tsize (KB)\twrite (ms)\tread (ms)");
+
+        Path path = Files.createTempFile("benchmark", ".pmf");
+        try {
+            for (int s = 0; s < strategies.length; s++) {
+                for (int i = 0; i < WARMUP; i++) {
+                    write(path, dataRecords, strategies[s]);
+                    read(path, mapped[s]);
+                }
+
+                long writeTime = 0;
+                long readTime = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long start = System.nanoTime();
+                    write(path, dataRecords, strategies[s]);
+                    writeTime += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    read(path, mapped[s]);
+                    readTime += System.nanoTime() - start;
+                }
+
+                System.out.println(String.format(Locale.ENGLISH, "%s\t%.1f\t%.2f\t%.2f", names[s],
+                        Files.size(path) / 1e3, writeTime / 1e6 / ITERATIONS, readTime / 1e6 / ITERATIONS));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void read(Path path, boolean mapped) throws Exception {
+        ExperimentalDataFile.read(path, new ReadOptions().setMemoryMapped(mapped));
+    }
+
+    private static void write(Path path, List<ExperimentalData> dataRecords, CompressionStrategy compression)
+            throws Exception {
+        ExperimentalDataFile.write(path, dataRecords, new WriteOptions().setCompression(compression));
+    }
+}
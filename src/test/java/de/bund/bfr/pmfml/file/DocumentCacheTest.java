@@ -0,0 +1,159 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.model.ExperimentalData;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import de.bund.bfr.pmfml.numl.TimeSeries;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DocumentCacheTest {
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("data", ".pmf");
+        ExperimentalDataFile.write(path, Arrays.asList(
+                new ExperimentalData("a.numl", ModelTestUtil.createDummyData()),
+                new ExperimentalData("b.numl", ModelTestUtil.createDummyData())));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        DocumentCache.setShared(null);
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testHitsAndInvalidation() throws Exception {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        DocumentCache.setShared(cache);
+
+        List<ExperimentalData> first = ExperimentalDataFile.read(path);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getNumDocuments());
+        assertTrue(cache.getSize() > 0);
+
+        // Same entries are not parsed again
+        List<ExperimentalData> second = ExperimentalDataFile.read(path);
+        assertEquals(2, cache.getHits());
+        assertEquals(first.get(0).getDoc().getResultComponent(), second.get(0).getDoc().getResultComponent());
+        assertEquals(first.get(1).getDoc().getResultComponent(), second.get(1).getDoc().getResultComponent());
+
+        cache.invalidate(path);
+        assertEquals(0, cache.getNumDocuments());
+        assertEquals(0, cache.getSize());
+
+        List<ExperimentalData> third = ExperimentalDataFile.read(path);
+        assertEquals(4, cache.getMisses());
+        assertNotSame(first.get(0).getDoc(), third.get(0).getDoc());
+    }
+
+    @Test
+    public void testHitsAreCopies() throws Exception {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        DocumentCache.setShared(cache);
+
+        // Neither the document parsed nor the copies returned by hits are the cached one
+        NuMLDocument first = ExperimentalDataFile.read(path).get(0).getDoc();
+        first.getResultComponent().setCondID(-1);
+        NuMLDocument second = ExperimentalDataFile.read(path).get(0).getDoc();
+        second.getResultComponent().setCondID(-2);
+        NuMLDocument third = ExperimentalDataFile.read(path).get(0).getDoc();
+
+        assertEquals(4, cache.getHits());
+        assertNotSame(second, third);
+        assertEquals(ModelTestUtil.createDummyData().getResultComponent().getCondID(),
+                third.getResultComponent().getCondID());
+        assertArrayEquals(first.getResultComponent().getTimeSeries().getConcentrations(),
+                third.getResultComponent().getTimeSeries().getConcentrations(), 0.0);
+    }
+
+    @Test
+    public void testHitCheaperThanParse() throws Exception {
+        // Large enough for the parsing to outweigh opening the archive
+        int size = 200_000;
+        double[] times = new double[size];
+        double[] concentrations = new double[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = i;
+            concentrations[i] = Math.log10(i + 1);
+        }
+        NuMLDocument doc = ModelTestUtil.createDummyData();
+        doc.getResultComponent().setTimeSeries(new TimeSeries(times, concentrations));
+        ExperimentalDataFile.write(path, Collections.singletonList(new ExperimentalData("large.numl", doc)));
+
+        long parseNanos = minReadNanos();
+
+        DocumentCache cache = new DocumentCache(1024 * 1024 * 1024);
+        DocumentCache.setShared(cache);
+        ExperimentalDataFile.read(path);
+        long hitNanos = minReadNanos();
+
+        assertEquals(5, cache.getHits());
+        assertTrue(hitNanos + " ns per hit, " + parseNanos + " ns per parse", hitNanos < parseNanos);
+    }
+
+    /**
+     * @return shortest of several reads of the file
+     */
+    private long minReadNanos() throws Exception {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            ExperimentalDataFile.read(path);
+            min = Math.min(min, System.nanoTime() - start);
+        }
+        return min;
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        DocumentCache.setShared(cache);
+        ExperimentalDataFile.read(path);
+
+        // Room for only one of the two entries, which have the same size
+        cache = new DocumentCache(cache.getSize() / 2);
+        DocumentCache.setShared(cache);
+
+        ExperimentalDataFile.read(path);
+        assertEquals(1, cache.getNumDocuments());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        List<ExperimentalData> first = ExperimentalDataFile.read(path);
+        List<ExperimentalData> second = ExperimentalDataFile.read(path);
+        assertNotSame(first.get(0).getDoc(), second.get(0).getDoc());
+    }
+}
@@ -0,0 +1,316 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.file.ArchiveTestUtil.CountingListener;
+import de.bund.bfr.pmfml.model.ExperimentalData;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.assertNoCopies;
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.assertSameEntries;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExperimentalDataFileTest {
+
+    private Path path;
+    private Path otherPath;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("data", ".pmf");
+        otherPath = Files.createTempFile("data", ".pmf");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(otherPath);
+    }
+
+    private static List<ExperimentalData> createDataRecords() {
+        List<ExperimentalData> dataRecords = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            dataRecords.add(new ExperimentalData("data" + i + ".numl", ModelTestUtil.createDummyData()));
+        }
+        return dataRecords;
+    }
+
+    @Test
+    public void testParallelRead() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+
+        List<ExperimentalData> sequential = ExperimentalDataFile.read(path);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<ExperimentalData> parallel;
+        try {
+            parallel = ExperimentalDataFile.read(path, new ReadOptions().setExecutor(executor));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(dataRecords.size(), sequential.size());
+        assertEquals(dataRecords.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            // Same order as the entries in the archive
+            assertEquals(sequential.get(i).getDocName(), parallel.get(i).getDocName());
+            assertEquals(sequential.get(i).getDoc().getResultComponent(),
+                    parallel.get(i).getDoc().getResultComponent());
+        }
+    }
+
+    @Test
+    public void testParallelWrite() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+
+        ExperimentalDataFile.write(path, dataRecords);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ExperimentalDataFile.write(otherPath, dataRecords, new WriteOptions().setExecutor(executor));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertSameEntries(path, otherPath);
+    }
+
+    @Test
+    public void testSink() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+
+        ModelSink<ExperimentalData> sink = ExperimentalDataFile.sink(otherPath);
+        try {
+            for (ExperimentalData dataRecord : dataRecords) {
+                sink.accept(dataRecord);
+            }
+            assertEquals(dataRecords.size(), sink.getNumModels());
+        } finally {
+            sink.close();
+        }
+
+        assertSameEntries(path, otherPath);
+        assertEquals(ModelType.EXPERIMENTAL_DATA, PMFArchive.probe(otherPath).getModelType());
+        assertEquals(dataRecords.size(), ExperimentalDataFile.read(otherPath).size());
+
+        try {
+            sink.accept(dataRecords.get(0));
+            fail();
+        } catch (IllegalStateException e) {
+            // Closed sinks accept no more models
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+
+        // A single thread is enough: no task waits for another
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ExperimentalDataFile.writeAsync(otherPath, dataRecords, executor).get(10, TimeUnit.SECONDS);
+            assertSameEntries(path, otherPath);
+
+            List<ExperimentalData> sync = ExperimentalDataFile.read(otherPath);
+            List<ExperimentalData> async =
+                    ExperimentalDataFile.readAsync(otherPath, executor).get(10, TimeUnit.SECONDS);
+            assertEquals(dataRecords.size(), async.size());
+            for (int i = 0; i < sync.size(); i++) {
+                assertEquals(sync.get(i).getDocName(), async.get(i).getDocName());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncCancel() throws Exception {
+        ExperimentalDataFile.write(path, createDataRecords());
+
+        // Counts the parsed entries
+        DocumentCache cache = new DocumentCache(1024 * 1024);
+        DocumentCache.setShared(cache);
+        try {
+            Queue<Runnable> tasks = new ArrayDeque<>();
+            CompletableFuture<List<ExperimentalData>> future = ExperimentalDataFile.readAsync(path, tasks::add);
+
+            // Opens the archive and submits the parsing tasks
+            tasks.remove().run();
+            assertFalse(tasks.isEmpty());
+
+            future.cancel(false);
+            while (!tasks.isEmpty()) {
+                tasks.remove().run();
+            }
+            assertTrue(future.isCancelled());
+            assertEquals(0, cache.getMisses());
+        } finally {
+            DocumentCache.setShared(null);
+        }
+    }
+
+    @Test
+    public void testProgress() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+
+        CountingListener writeListener = new CountingListener(null, 0);
+        ExperimentalDataFile.write(path, dataRecords, new WriteOptions().setListener(writeListener));
+        assertEquals(dataRecords.size(), writeListener.started.get());
+        assertEquals(dataRecords.size(), writeListener.finished.get());
+        assertTrue(writeListener.bytes.get() > 0);
+
+        CountingListener readListener = new CountingListener(null, 0);
+        ExperimentalDataFile.read(path, new ReadOptions().setListener(readListener));
+        assertEquals(dataRecords.size(), readListener.finished.get());
+        assertEquals(writeListener.bytes.get(), readListener.bytes.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+
+        // Cancelled after the third entry
+        CancellationToken readToken = new CancellationToken();
+        CountingListener readListener = new CountingListener(readToken, 3);
+        try {
+            ExperimentalDataFile.read(path, new ReadOptions().setListener(readListener).setToken(readToken));
+            fail();
+        } catch (CancellationException e) {
+            assertEquals(3, readListener.finished.get());
+        }
+
+        CancellationToken writeToken = new CancellationToken();
+        CountingListener writeListener = new CountingListener(writeToken, 3);
+        try {
+            ExperimentalDataFile.write(otherPath, dataRecords,
+                    new WriteOptions().setListener(writeListener).setToken(writeToken));
+            fail();
+        } catch (CancellationException e) {
+            assertEquals(3, writeListener.finished.get());
+            assertFalse(Files.exists(otherPath));
+        }
+    }
+
+    @Test
+    public void testDeduplication() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+
+        // Records added again under the same name, as the same or equal documents, are not written again
+        List<ExperimentalData> repeated = new ArrayList<>(dataRecords);
+        repeated.addAll(dataRecords);
+        repeated.addAll(ExperimentalDataFile.read(path));
+
+        CountingListener listener = new CountingListener(null, 0);
+        ExperimentalDataFile.write(otherPath, repeated, new WriteOptions().setListener(listener));
+        assertEquals(dataRecords.size(), listener.finished.get());
+        assertSameEntries(path, otherPath);
+    }
+
+    @Test
+    public void testEdit() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+        Files.copy(path, otherPath, StandardCopyOption.REPLACE_EXISTING);
+
+        try (ModelEditor<ExperimentalData> editor = ExperimentalDataFile.edit(path)) {
+            assertTrue(editor.remove("data0.numl"));
+            assertFalse(editor.remove("missing.numl"));
+            editor.add(new ExperimentalData("added.numl", ModelTestUtil.createDummyData()));
+            // Replaces the existing entry
+            editor.add(new ExperimentalData("data1.numl", ModelTestUtil.createDummyData()));
+        }
+
+        List<String> docNames = new ArrayList<>();
+        ExperimentalDataFile.read(path).forEach(data -> docNames.add(data.getDocName()));
+        assertEquals(dataRecords.size(), docNames.size());
+        assertTrue(docNames.contains("added.numl"));
+        assertFalse(docNames.contains("data0.numl"));
+
+        // Unchanged entries are copied as they are
+        try (ZipFile zipFile = new ZipFile(path.toFile()); ZipFile originalZipFile = new ZipFile(otherPath.toFile())) {
+            ZipEntry entry = zipFile.getEntry("data2.numl");
+            ZipEntry originalEntry = originalZipFile.getEntry("data2.numl");
+            assertEquals(originalEntry.getCrc(), entry.getCrc());
+            assertEquals(originalEntry.getCompressedSize(), entry.getCompressedSize());
+        }
+    }
+
+    @Test
+    public void testEditCorruptFile() throws Exception {
+        Files.write(path, "not a zip file".getBytes("UTF-8"));
+        try {
+            ExperimentalDataFile.edit(path);
+            fail();
+        } catch (IOException | CombineArchiveException e) {
+            assertNoCopies(path);
+        }
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        List<ExperimentalData> dataRecords = createDataRecords();
+        ExperimentalDataFile.write(path, dataRecords);
+
+        ExperimentalDataFile.write(otherPath, dataRecords,
+                new WriteOptions().setCompression(CompressionStrategy.FASTEST_READ));
+        assertSameEntries(path, otherPath);
+        try (ZipFile zipFile = new ZipFile(otherPath.toFile())) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("data0.numl").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("readme.txt").getMethod());
+        }
+        assertTrue(Files.size(otherPath) > Files.size(path));
+        assertEquals(dataRecords.size(), ExperimentalDataFile.read(otherPath).size());
+
+        ExperimentalDataFile.write(otherPath, dataRecords,
+                new WriteOptions().setCompression(CompressionStrategy.SMALLEST));
+        assertSameEntries(path, otherPath);
+        assertTrue(Files.size(otherPath) <= Files.size(path));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCompressionLevel() {
+        new CompressionStrategy(CompressionStrategy.STORED, 10, 0);
+    }
+}
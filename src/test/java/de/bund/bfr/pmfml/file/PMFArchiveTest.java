@@ -0,0 +1,283 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.model.ExperimentalData;
+import de.bund.bfr.pmfml.model.ManualTertiaryModel;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PMFArchiveTest {
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("data", ".pmf");
+        ExperimentalDataFile.write(path, Arrays.asList(
+                new ExperimentalData("a.numl", ModelTestUtil.createDummyData()),
+                new ExperimentalData("b.numl", ModelTestUtil.createDummyData())));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testLazyHandles() throws Exception {
+        try (PMFArchive archive = PMFArchive.open(path)) {
+            assertEquals(ModelType.EXPERIMENTAL_DATA, archive.getModelType());
+            assertTrue(archive.getMasterFiles().isEmpty());
+            assertEquals(2, archive.getDataDocuments().size());
+            assertTrue(archive.getModelDocuments().isEmpty());
+            assertNull(archive.getDataDocument("c.numl"));
+
+            DocumentHandle<NuMLDocument> a = archive.getDataDocument("a.numl");
+            DocumentHandle<NuMLDocument> b = archive.getDataDocument("b.numl");
+            assertEquals("a.numl", a.getName());
+            assertFalse(a.isLoaded());
+
+            // Parsed on first access and then memoized
+            NuMLDocument doc = a.get();
+            assertTrue(a.isLoaded());
+            assertSame(doc, a.get());
+            assertFalse(b.isLoaded());
+
+            assertEquals(ModelTestUtil.createDummyData().getResultComponent(), doc.getResultComponent());
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        try (PMFArchive archive = PMFArchive.open(path)) {
+            assertSame(archive, archive.load(Runnable::run));
+            for (DocumentHandle<NuMLDocument> handle : archive.getDataDocuments()) {
+                assertTrue(handle.isLoaded());
+                assertFalse(handle.isFailed());
+            }
+
+            // Views are built from the loaded documents, in the order of the entries
+            List<ExperimentalData> dataRecords = archive.getExperimentalData();
+            assertEquals(2, dataRecords.size());
+            assertEquals("a.numl", dataRecords.get(0).getDocName());
+            assertSame(archive.getDataDocument("a.numl").get(), dataRecords.get(0).getDoc());
+            assertEquals("b.numl", dataRecords.get(1).getDocName());
+
+            // Views of other model types are empty
+            assertTrue(archive.getManualTertiaryModels().isEmpty());
+        }
+    }
+
+    @Test
+    public void testMemoryMapped() throws Exception {
+        // Deflated entries are not mapped
+        try (MappedArchive mappedArchive = MappedArchive.map(path)) {
+            assertEquals(0, mappedArchive.getNumEntries());
+        }
+
+        List<ExperimentalData> dataRecords = ExperimentalDataFile.read(path);
+        ExperimentalDataFile.write(path, dataRecords,
+                new WriteOptions().setCompression(CompressionStrategy.FASTEST_READ));
+
+        try (MappedArchive mappedArchive = MappedArchive.map(path)) {
+            assertEquals(2, mappedArchive.getNumEntries());
+            assertTrue(mappedArchive.isMapped("a.numl"));
+            assertNull(mappedArchive.open("readme.txt"));
+
+            // Streams still open keep the mapping after closing the archive
+            InputStream is = mappedArchive.open("a.numl");
+            mappedArchive.close();
+            assertEquals('<', is.read());
+            is.close();
+
+            try {
+                mappedArchive.open("a.numl");
+                fail("Entries cannot be opened once the archive is closed");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+
+        try (PMFArchive archive = PMFArchive.open(path, new ReadOptions().setMemoryMapped(true))) {
+            List<ExperimentalData> mappedRecords = archive.load(Runnable::run).getExperimentalData();
+            assertEquals(dataRecords.size(), mappedRecords.size());
+            for (int i = 0; i < dataRecords.size(); i++) {
+                assertEquals(dataRecords.get(i).getDocName(), mappedRecords.get(i).getDocName());
+                assertEquals(dataRecords.get(i).getDoc().getResultComponent(),
+                        mappedRecords.get(i).getDoc().getResultComponent());
+            }
+        }
+    }
+
+    @Test
+    public void testTertiaryView() throws Exception {
+        Path modelPath = Files.createTempFile("model", ".pmf");
+        try {
+            ManualTertiaryModel model = new ManualTertiaryModel("tertDoc.sbml", ModelTestUtil.createDummyModel(),
+                    Collections.emptyList(), Collections.emptyList());
+            ManualTertiaryModelFile.write(modelPath, Collections.singletonList(model));
+
+            try (PMFArchive archive = PMFArchive.open(modelPath)) {
+                List<ManualTertiaryModel> models = archive.getManualTertiaryModels();
+                assertEquals(1, models.size());
+                assertEquals("tertDoc.sbml", models.get(0).getTertiaryDocName());
+
+                // Only the master file was parsed
+                assertTrue(archive.getModelDocument("tertDoc.sbml").isLoaded());
+            }
+
+            assertEquals(1, ManualTertiaryModelFile.read(modelPath).size());
+        } finally {
+            Files.deleteIfExists(modelPath);
+        }
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        Path modelPath = Files.createTempFile("model", ".pmf");
+        try {
+            // Primary model with data. The SBML document has only the data source annotation
+            byte[] modelContent = ("<sbml><model><annotation><metadata>"
+                    + "<pmmlab:dataSource id=\"source1\" href=\"a.numl\"/>"
+                    + "</metadata></annotation></model></sbml>").getBytes(StandardCharsets.UTF_8);
+            byte[] dataContent = CombineArchiveUtil.serializeData(ModelTestUtil.createDummyData());
+            PMFArchive.write(modelPath, ModelType.PRIMARY_MODEL_WDATA, Collections.singletonList(modelContent),
+                    new DocumentBuffers(Runnable::run), CompressionStrategy.DEFAULT,
+                    (ca, buffers, content, masterFiles) -> {
+                        CombineArchiveUtil.writeEntry(ca, dataContent, "a.numl", URIS.numl);
+                        CombineArchiveUtil.writeEntry(ca, content, "m.sbml", URIS.sbml);
+                    });
+
+            try (PMFArchive archive = PMFArchive.open(modelPath, Projection.DATA)) {
+                assertEquals(1, archive.getDataDocuments().size());
+                assertTrue(archive.getModelDocuments().isEmpty());
+                assertEquals(Collections.singletonList("m.sbml"), archive.getModelDocumentNames());
+                assertEquals(Collections.singletonMap("m.sbml", Collections.singletonList("a.numl")),
+                        archive.getDataSources());
+                assertEquals(1, archive.load(Runnable::run).getExperimentalData().size());
+                assertTrue(archive.getPrimaryModelsWData().isEmpty());
+            }
+
+            try (PMFArchive archive = PMFArchive.open(modelPath, Projection.METADATA)) {
+                assertEquals(ModelType.PRIMARY_MODEL_WDATA, archive.getModelType());
+                assertTrue(archive.getDataDocuments().isEmpty());
+                assertEquals(Collections.singletonList("a.numl"), archive.getDataDocumentNames());
+                assertEquals(1, archive.getDataSources().size());
+            }
+
+            // The data of model files can be read as experimental data
+            assertEquals("a.numl", ExperimentalDataFile.read(modelPath).get(0).getDocName());
+        } finally {
+            Files.deleteIfExists(modelPath);
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        Path modelPath = Files.createTempFile("model", ".pmf");
+        try {
+            ManualTertiaryModel model = new ManualTertiaryModel("tertDoc.sbml", ModelTestUtil.createDummyModel(),
+                    Collections.emptyList(), Collections.emptyList());
+            ManualTertiaryModelFile.write(modelPath, Collections.singletonList(model));
+
+            try (PMFArchive archive = PMFArchive.open(modelPath)) {
+                assertEquals(1, archive.streamManualTertiaryModels().count());
+
+                // Streamed documents are not kept by their handles
+                assertFalse(archive.getModelDocument("tertDoc.sbml").isLoaded());
+            }
+
+            try (Stream<ManualTertiaryModel> models = ManualTertiaryModelFile.stream(modelPath)) {
+                assertEquals("tertDoc.sbml", models.findFirst().get().getTertiaryDocName());
+            }
+        } finally {
+            Files.deleteIfExists(modelPath);
+        }
+    }
+
+    @Test
+    public void testMissingDocuments() throws Exception {
+        Path modelPath = Files.createTempFile("model", ".pmf");
+        try {
+            // Tertiary model linked to a secondary model not in the file
+            SBMLDocument tertDoc = new SBMLDocument(3, 1);
+            tertDoc.createModel("tertDoc");
+            tertDoc.enablePackage(CompConstants.namespaceURI);
+            ((CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel))
+                    .createExternalModelDefinition("missing").setSource("missing.sbml");
+            ManualTertiaryModel model = new ManualTertiaryModel("tertDoc.sbml", tertDoc, Collections.emptyList(),
+                    Collections.emptyList());
+            ManualTertiaryModelFile.write(modelPath, Collections.singletonList(model));
+
+            // The model is skipped by every tertiary view
+            try (PMFArchive archive = PMFArchive.open(modelPath)) {
+                assertTrue(archive.getManualTertiaryModels().isEmpty());
+                assertTrue(archive.getOneStepTertiaryModels().isEmpty());
+                assertTrue(archive.getTwoStepTertiaryModels().isEmpty());
+                assertEquals(0, archive.streamTwoStepTertiaryModels().count());
+            }
+            assertTrue(ManualTertiaryModelFile.read(modelPath).isEmpty());
+        } finally {
+            Files.deleteIfExists(modelPath);
+        }
+    }
+
+    @Test
+    public void testProbe() throws Exception {
+        PMFArchiveInfo dataInfo = PMFArchive.probe(path);
+        assertEquals(ModelType.EXPERIMENTAL_DATA, dataInfo.getModelType());
+        assertTrue(dataInfo.getMasterFiles().isEmpty());
+        assertEquals(2, dataInfo.getNumDataEntries());
+        assertEquals(0, dataInfo.getNumModelEntries());
+
+        Path modelPath = Files.createTempFile("model", ".pmf");
+        try {
+            ManualTertiaryModel model = new ManualTertiaryModel("tertDoc.sbml", ModelTestUtil.createDummyModel(),
+                    Collections.singletonList("secDoc.sbml"),
+                    Collections.singletonList(ModelTestUtil.createDummyModel()));
+            ManualTertiaryModelFile.write(modelPath, Collections.singletonList(model));
+
+            PMFArchiveInfo modelInfo = PMFArchive.probe(modelPath);
+            assertEquals(ModelType.MANUAL_TERTIARY_MODEL, modelInfo.getModelType());
+            assertEquals(Collections.singleton("tertDoc.sbml"), modelInfo.getMasterFiles());
+            assertEquals(0, modelInfo.getNumDataEntries());
+            assertEquals(2, modelInfo.getNumModelEntries());
+        } finally {
+            Files.deleteIfExists(modelPath);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import de.bund.bfr.pmfml.model.PrimaryModelWData;
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.assertNoCopies;
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.getDocNames;
+import static org.junit.Assert.assertEquals;
+
+public class PrimaryModelWDataFileTest {
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("models", ".pmf");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testSharedData() throws Exception {
+        NuMLDocument dataDoc = ModelTestUtil.createDummyData();
+        List<PrimaryModelWData> models = Arrays.asList(
+                new PrimaryModelWData("a.sbml", ModelTestUtil.createDummyModel(), "data.numl", dataDoc),
+                new PrimaryModelWData("b.sbml", ModelTestUtil.createDummyModel(), "data.numl", dataDoc),
+                new PrimaryModelWData("c.sbml", ModelTestUtil.createDummyModel(), "c.numl",
+                        ModelTestUtil.createDummyData()));
+        PrimaryModelWDataFile.write(path, models);
+
+        // Data shared by name is stored once. Equal data under another name keeps its name, which c.sbml refers to
+        assertEquals(Arrays.asList("data.numl", "a.sbml", "b.sbml", "c.numl", "c.sbml"), getDocNames(path));
+    }
+
+    @Test
+    public void testSink() throws Exception {
+        // Data shared by name
+        NuMLDocument dataDoc = ModelTestUtil.createDummyData();
+        try (ModelSink<PrimaryModelWData> sink = PrimaryModelWDataFile.sink(path)) {
+            sink.accept(new PrimaryModelWData("a.sbml", ModelTestUtil.createDummyModel(), "data.numl", dataDoc));
+            sink.accept(new PrimaryModelWData("b.sbml", ModelTestUtil.createDummyModel(), "data.numl", dataDoc));
+            assertEquals(2, sink.getNumModels());
+        }
+
+        assertEquals(Arrays.asList("data.numl", "a.sbml", "b.sbml"), getDocNames(path));
+        assertEquals(ModelType.PRIMARY_MODEL_WDATA, PMFArchive.probe(path).getModelType());
+
+        // The scratch archive is removed
+        assertNoCopies(path);
+    }
+}
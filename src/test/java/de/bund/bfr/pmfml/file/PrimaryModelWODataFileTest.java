@@ -0,0 +1,63 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.model.ExperimentalData;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import de.unirostock.sems.cbarchive.CombineArchiveException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.assertNoCopies;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+public class PrimaryModelWODataFileTest {
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("models", ".pmf");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    public void testEditOtherModelType() throws Exception {
+        ExperimentalDataFile.write(path, Collections.singletonList(
+                new ExperimentalData("data.numl", ModelTestUtil.createDummyData())));
+        byte[] bytes = Files.readAllBytes(path);
+
+        // The file holds no primary models
+        try {
+            PrimaryModelWODataFile.edit(path);
+            fail();
+        } catch (CombineArchiveException e) {
+            assertNoCopies(path);
+            assertArrayEquals(bytes, Files.readAllBytes(path));
+        }
+    }
+}
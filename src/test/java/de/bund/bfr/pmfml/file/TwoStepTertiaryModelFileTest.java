@@ -0,0 +1,272 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.file;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.file.ArchiveTestUtil.CountingListener;
+import de.bund.bfr.pmfml.model.ModelTestUtil;
+import de.bund.bfr.pmfml.model.PrimaryModelWData;
+import de.bund.bfr.pmfml.model.TwoStepTertiaryModel;
+import de.bund.bfr.pmfml.numl.NuMLDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbml.jsbml.SBMLDocument;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.assertNoCopies;
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.assertSameEntries;
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.getDocNames;
+import static de.bund.bfr.pmfml.file.ArchiveTestUtil.readEntry;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TwoStepTertiaryModelFileTest {
+
+    private static final int NUM_MODELS = 5;
+
+    private Path path;
+    private Path otherPath;
+
+    @Before
+    public void setUp() throws Exception {
+        path = Files.createTempFile("models", ".pmf");
+        otherPath = Files.createTempFile("models", ".pmf");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(otherPath);
+    }
+
+    private static SBMLDocument createModelDoc(String id) {
+        SBMLDocument doc = new SBMLDocument(3, 1);
+        doc.createModel(id);
+        return doc;
+    }
+
+    private static NuMLDocument createDataDoc(int condId) {
+        NuMLDocument doc = ModelTestUtil.createDummyData();
+        doc.getResultComponent().setCondID(condId);
+        return doc;
+    }
+
+    /**
+     * Creates a tertiary model with two primary models and a secondary model, all with different documents.
+     */
+    private static TwoStepTertiaryModel createModel(int i) {
+        List<PrimaryModelWData> primModels = new ArrayList<>();
+        for (int j = 0; j < 2; j++) {
+            String id = i + "_" + j;
+            primModels.add(new PrimaryModelWData("prim" + id + ".sbml", createModelDoc("prim" + id),
+                    "data" + id + ".numl", createDataDoc(2 * i + j)));
+        }
+        return new TwoStepTertiaryModel("tert" + i + ".sbml", createModelDoc("tert" + i), primModels,
+                Collections.singletonList("sec" + i + ".sbml"), Collections.singletonList(createModelDoc("sec" + i)));
+    }
+
+    private static List<TwoStepTertiaryModel> createModels() {
+        List<TwoStepTertiaryModel> models = new ArrayList<>();
+        for (int i = 0; i < NUM_MODELS; i++) {
+            models.add(createModel(i));
+        }
+        return models;
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        TwoStepTertiaryModelFile.write(path, createModels());
+
+        // The documents of every model follow the ones it depends on
+        List<String> docNames = getDocNames(path);
+        assertEquals(6 * NUM_MODELS, docNames.size());
+        assertEquals(Arrays.asList("data0_0.numl", "prim0_0.sbml", "data0_1.numl", "prim0_1.sbml", "sec0.sbml",
+                "tert0.sbml"), docNames.subList(0, 6));
+
+        PMFArchiveInfo info = PMFArchive.probe(path);
+        assertEquals(ModelType.TWO_STEP_TERTIARY_MODEL, info.getModelType());
+        assertEquals(new HashSet<>(Arrays.asList("tert0.sbml", "tert1.sbml", "tert2.sbml", "tert3.sbml",
+                "tert4.sbml")), info.getMasterFiles());
+    }
+
+    @Test
+    public void testParallelWrite() throws Exception {
+        List<TwoStepTertiaryModel> models = createModels();
+
+        TwoStepTertiaryModelFile.write(path, models);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TwoStepTertiaryModelFile.write(otherPath, models, new WriteOptions().setExecutor(executor));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertSameEntries(path, otherPath);
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        List<TwoStepTertiaryModel> models = createModels();
+        TwoStepTertiaryModelFile.write(path, models);
+
+        // A single thread is enough: no task waits for another
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            TwoStepTertiaryModelFile.writeAsync(otherPath, models, executor).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertSameEntries(path, otherPath);
+    }
+
+    @Test
+    public void testSink() throws Exception {
+        List<TwoStepTertiaryModel> models = createModels();
+        TwoStepTertiaryModelFile.write(path, models);
+
+        try (ModelSink<TwoStepTertiaryModel> sink = TwoStepTertiaryModelFile.sink(otherPath)) {
+            for (TwoStepTertiaryModel model : models) {
+                sink.accept(model);
+            }
+            assertEquals(models.size(), sink.getNumModels());
+        }
+
+        assertSameEntries(path, otherPath);
+        assertNoCopies(otherPath);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CancellationToken token = new CancellationToken();
+        CountingListener listener = new CountingListener(token, 3);
+        try {
+            TwoStepTertiaryModelFile.write(path, createModels(),
+                    new WriteOptions().setListener(listener).setToken(token));
+            fail();
+        } catch (CancellationException e) {
+            assertEquals(3, listener.finished.get());
+            assertFalse(Files.exists(path));
+        }
+    }
+
+    @Test
+    public void testSharedDocuments() throws Exception {
+        TwoStepTertiaryModel model = createModel(0);
+
+        // Shares the primary and secondary models by name
+        TwoStepTertiaryModel sameNames = new TwoStepTertiaryModel("tert1.sbml", createModelDoc("tert1"),
+                model.getPrimModels(), model.getSecDocNames(), model.getSecDocs());
+
+        // Equal documents under other names
+        List<PrimaryModelWData> primModels = new ArrayList<>();
+        for (PrimaryModelWData pm : model.getPrimModels()) {
+            primModels.add(new PrimaryModelWData("copy_" + pm.getModelDocName(), createModelDoc(pm.getModelDoc()
+                    .getModel().getId()), "copy_" + pm.getDataDocName(), createDataDoc(pm.getDataDoc()
+                    .getResultComponent().getCondID())));
+        }
+        TwoStepTertiaryModel otherNames = new TwoStepTertiaryModel("tert2.sbml", createModelDoc("tert2"),
+                primModels, Collections.singletonList("copy_sec0.sbml"),
+                Collections.singletonList(createModelDoc("sec0")));
+
+        CountingListener listener = new CountingListener(null, 0);
+        TwoStepTertiaryModelFile.write(path, Arrays.asList(model, sameNames, otherNames),
+                new WriteOptions().setListener(listener));
+
+        // Documents shared by name are stored once. Equal documents under other names keep their names, which the
+        // documents of the last model refer to
+        assertEquals(Arrays.asList("data0_0.numl", "prim0_0.sbml", "data0_1.numl", "prim0_1.sbml", "sec0.sbml",
+                "tert0.sbml", "tert1.sbml", "copy_data0_0.numl", "copy_prim0_0.sbml", "copy_data0_1.numl",
+                "copy_prim0_1.sbml", "copy_sec0.sbml", "tert2.sbml"), getDocNames(path));
+        assertEquals(13, listener.finished.get());
+        assertArrayEquals(readEntry(path, "prim0_0.sbml"), readEntry(path, "copy_prim0_0.sbml"));
+        assertEquals(new HashSet<>(Arrays.asList("tert0.sbml", "tert1.sbml", "tert2.sbml")),
+                PMFArchive.probe(path).getMasterFiles());
+    }
+
+    @Test
+    public void testEdit() throws Exception {
+        List<TwoStepTertiaryModel> models = createModels();
+        TwoStepTertiaryModelFile.write(path, models);
+
+        TwoStepTertiaryModel changed = new TwoStepTertiaryModel("tert1.sbml", createModelDoc("tert1_changed"),
+                models.get(1).getPrimModels(), models.get(1).getSecDocNames(), models.get(1).getSecDocs());
+        TwoStepTertiaryModel added = createModel(NUM_MODELS);
+
+        try (ModelEditor<TwoStepTertiaryModel> editor = TwoStepTertiaryModelFile.edit(path)) {
+            TwoStepTertiaryModel removed = models.get(0);
+            assertTrue(editor.remove(removed.getTertDocName()));
+            for (PrimaryModelWData pm : removed.getPrimModels()) {
+                assertTrue(editor.remove(pm.getModelDocName()));
+                assertTrue(editor.remove(pm.getDataDocName()));
+            }
+            assertTrue(editor.remove(removed.getSecDocNames().get(0)));
+
+            // Replaces the tertiary document and keeps the others
+            editor.add(changed);
+            editor.add(added);
+        }
+
+        // Same documents and master files as a file written with the resulting models
+        List<TwoStepTertiaryModel> expected = new ArrayList<>(models.subList(2, NUM_MODELS));
+        expected.add(changed);
+        expected.add(added);
+        TwoStepTertiaryModelFile.write(otherPath, expected);
+
+        List<String> docNames = getDocNames(path);
+        assertEquals(new TreeSet<>(getDocNames(otherPath)), new TreeSet<>(docNames));
+        assertEquals(docNames.size(), new HashSet<>(docNames).size());
+        for (String docName : docNames) {
+            assertArrayEquals(docName, readEntry(otherPath, docName), readEntry(path, docName));
+        }
+        assertEquals(PMFArchive.probe(otherPath).getMasterFiles(), PMFArchive.probe(path).getMasterFiles());
+        assertNoCopies(path);
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        List<TwoStepTertiaryModel> models = createModels();
+        TwoStepTertiaryModelFile.write(path, models);
+
+        TwoStepTertiaryModelFile.write(otherPath, models,
+                new WriteOptions().setCompression(CompressionStrategy.FASTEST_READ));
+        assertSameEntries(path, otherPath);
+        try (ZipFile zipFile = new ZipFile(otherPath.toFile())) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("tert0.sbml").getMethod());
+            assertEquals(ZipEntry.STORED, zipFile.getEntry("data0_0.numl").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("readme.txt").getMethod());
+        }
+    }
+}
@@ -45,11 +45,11 @@ public class ModelTestUtil {
     private ModelTestUtil() {
     }
 
-    static SBMLDocument createDummyModel() {
+    public static SBMLDocument createDummyModel() {
         return new SBMLDocument();
     }
 
-    static NuMLDocument createDummyData() {
+    public static NuMLDocument createDummyData() {
         return new NuMLDocument(createConcentrationOntology(), createTimeOntology(),
                 createResultComponent());
     }
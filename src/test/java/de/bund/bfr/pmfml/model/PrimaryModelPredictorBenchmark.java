@@ -0,0 +1,140 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.model;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.SBMLDocument;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the prediction of Weibull models by walking their ASTs with the {@link PrimaryModelPredictor}, point by
+ * point and over whole time grids. It is not run with the unit tests. Run it with the test classpath, e.g.
+ * <code>java -cp ... de.bund.bfr.pmfml.model.PrimaryModelPredictorBenchmark</code>.
+ */
+public class PrimaryModelPredictorBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+    private static final int NUM_MODELS = 1_000;
+    private static final int NUM_TIMES = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        List<SBMLDocument> docs = new ArrayList<>();
+        List<PrimaryModelPredictor> predictors = new ArrayList<>();
+        for (int i = 0; i < NUM_MODELS; i++) {
+            SBMLDocument doc = PrimaryModelPredictorTest.createWeibullModel(6.0, 1.5, 5.0 + i % 20, 0.8 + i % 7 * 0.1);
+            docs.add(doc);
+            predictors.add(new PrimaryModelPredictor(doc));
+        }
+        double[] times = PrimaryModelPredictorTest.createTimeGrid(NUM_TIMES, 48);
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+        System.out.println("method\tms per " + NUM_MODELS + " models x " + NUM_TIMES + " times\tmillion points/s");
+        try {
+            run("ast walking", () -> {
+                for (SBMLDocument doc : docs) {
+                    walk(doc, times);
+                }
+            });
+            run("compiled, point by point", () -> {
+                for (PrimaryModelPredictor predictor : predictors) {
+                    double[] values = new double[times.length];
+                    for (int i = 0; i < times.length; i++) {
+                        values[i] = predictor.getFormula().applyAsDouble(times[i]);
+                    }
+                }
+            });
+            run("compiled, grid", () -> {
+                for (PrimaryModelPredictor predictor : predictors) {
+                    predictor.predict(times);
+                }
+            });
+            run("compiled, grid, " + numThreads + " threads",
+                    () -> PrimaryModelPredictor.predict(predictors, times, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void run(String method, Runnable task) {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        System.out.println(String.format(Locale.ENGLISH, "%s\t%.2f\t%.2f", method, ms,
+                (double) NUM_MODELS * NUM_TIMES / ms / 1e3));
+    }
+
+    /**
+     * Predicts a model by walking its AST, looking up the parameters by name for every point.
+     */
+    private static double[] walk(SBMLDocument doc, double[] times) {
+        ASTNode math = doc.getModel().getRule(0).getMath();
+        Map<String, Double> values = new HashMap<>();
+        for (Parameter parameter : doc.getModel().getListOfParameters()) {
+            values.put(parameter.getId(), parameter.getValue());
+        }
+
+        double[] results = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            values.put(PrimaryModelPredictor.TIME, times[i]);
+            results[i] = walk(math, values);
+        }
+        return results;
+    }
+
+    private static double walk(ASTNode node, Map<String, Double> values) {
+        switch (node.getType()) {
+            case INTEGER:
+                return node.getInteger();
+            case REAL:
+                return node.getReal();
+            case NAME:
+                return values.get(node.getName());
+            case PLUS:
+                return walk(node.getChild(0), values) + walk(node.getChild(1), values);
+            case MINUS:
+                return node.getChildCount() == 1 ? -walk(node.getChild(0), values)
+                        : walk(node.getChild(0), values) - walk(node.getChild(1), values);
+            case TIMES:
+                return walk(node.getChild(0), values) * walk(node.getChild(1), values);
+            case DIVIDE:
+                return walk(node.getChild(0), values) / walk(node.getChild(1), values);
+            case POWER:
+                return Math.pow(walk(node.getChild(0), values), walk(node.getChild(1), values));
+            case FUNCTION_LOG:
+                return node.getChildCount() == 1 ? Math.log10(walk(node.getChild(0), values))
+                        : Math.log(walk(node.getChild(1), values)) / Math.log(walk(node.getChild(0), values));
+            default:
+                throw new UnsupportedOperationException(node.getType().toString());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.model;
+
+import de.bund.bfr.pmfml.ModelClass;
+import de.bund.bfr.pmfml.sbml.ModelRule;
+import de.bund.bfr.pmfml.sbml.Reference;
+import org.junit.Test;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.SBMLDocument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class PrimaryModelPredictorTest {
+
+    static final String WEIBULL = "LOG10Nres+log10((10^(LOG10N0-LOG10Nres)-1)*10^(-(Time/delta)^p)+1)";
+
+    @Test
+    public void testPredict() {
+        PrimaryModelPredictor predictor = new PrimaryModelPredictor(createWeibullModel(6.0, 1.5, 12.5, 1.3));
+        assertEquals("species", predictor.getVariable());
+
+        double[] times = createTimeGrid(1000, 48);
+        double[] values = predictor.predict(times);
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(weibull(6.0, 1.5, 12.5, 1.3, times[i]), values[i], 1e-12);
+            assertEquals(predictor.getFormula().applyAsDouble(times[i]), values[i], 0.0);
+        }
+
+        // In place
+        predictor.predict(times, times);
+        assertArrayEquals(values, times, 0.0);
+    }
+
+    @Test
+    public void testScenario() {
+        SBMLDocument doc = createWeibullModel(6.0, 1.5, 12.5, 1.3);
+        PrimaryModelPredictor predictor = new PrimaryModelPredictor(doc, Collections.singletonMap("delta", 20.0));
+        assertEquals(weibull(6.0, 1.5, 20.0, 1.3, 10), predictor.predict(new double[]{10})[0], 1e-12);
+    }
+
+    @Test
+    public void testParallel() {
+        double[] times = createTimeGrid(500, 48);
+
+        List<PrimaryModelPredictor> predictors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            predictors.add(new PrimaryModelPredictor(new PrimaryModelWOData("model" + i + ".sbml",
+                    createWeibullModel(6.0, 1.5, 10.0 + i, 1.3))));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            double[][] values = PrimaryModelPredictor.predict(predictors, times, executor);
+            assertEquals(predictors.size(), values.length);
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(weibull(6.0, 1.5, 10.0 + i, 1.3, times[17]), values[i][17], 1e-12);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testModelWithoutRule() {
+        SBMLDocument doc = new SBMLDocument(3, 1);
+        doc.createModel("model");
+        new PrimaryModelPredictor(doc);
+    }
+
+    /**
+     * Creates a primary model of the Weibull model with the given coefficients.
+     */
+    static SBMLDocument createWeibullModel(double log10N0, double log10Nres, double delta, double p) {
+        SBMLDocument doc = new SBMLDocument(3, 1);
+        Model model = doc.createModel("weibull");
+
+        Parameter time = model.createParameter(PrimaryModelPredictor.TIME);
+        time.setConstant(false);
+        addCoefficient(model, "LOG10N0", log10N0);
+        addCoefficient(model, "LOG10Nres", log10Nres);
+        addCoefficient(model, "delta", delta);
+        addCoefficient(model, "p", p);
+
+        ModelRule rule = new ModelRule("species", WEIBULL, "Weibull model", ModelClass.GROWTH, 0, new Reference[0]);
+        model.addRule(rule.getRule());
+
+        return doc;
+    }
+
+    static double[] createTimeGrid(int size, double end) {
+        double[] times = new double[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = end * i / (size - 1);
+        }
+        return times;
+    }
+
+    private static void addCoefficient(Model model, String id, double value) {
+        Parameter parameter = model.createParameter(id);
+        parameter.setConstant(true);
+        parameter.setValue(value);
+    }
+
+    private static double weibull(double log10N0, double log10Nres, double delta, double p, double time) {
+        return log10Nres + Math.log10((Math.pow(10, log10N0 - log10Nres) - 1) *
+                Math.pow(10, -Math.pow(time / delta, p)) + 1);
+    }
+}
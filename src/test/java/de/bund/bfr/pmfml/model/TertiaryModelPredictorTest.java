@@ -0,0 +1,208 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.model;
+
+import de.bund.bfr.pmfml.ModelClass;
+import de.bund.bfr.pmfml.sbml.ModelRule;
+import de.bund.bfr.pmfml.sbml.Reference;
+import org.junit.Test;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.CompSBasePlugin;
+import org.sbml.jsbml.ext.comp.ReplacedBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TertiaryModelPredictorTest {
+
+    @Test
+    public void testPredict() {
+        TertiaryModelPredictor predictor = new TertiaryModelPredictor(createModel());
+        assertEquals("species", predictor.getVariable());
+        assertEquals(Arrays.asList("Temperature", "pH"), predictor.getConditions());
+        assertEquals(Arrays.asList("mu_max", "lambda"), predictor.getSecondaryVariables());
+
+        double[] times = PrimaryModelPredictorTest.createTimeGrid(100, 48);
+        double[] values = predictor.predict(new double[]{20, 6.5}, times);
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(predict(20, 6.5, times[i]), values[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void testSweep() {
+        TertiaryModelPredictor predictor = new TertiaryModelPredictor(createModel());
+        double[] times = PrimaryModelPredictorTest.createTimeGrid(50, 48);
+
+        double[][] conditions = new double[300][];
+        for (int i = 0; i < conditions.length; i++) {
+            conditions[i] = new double[]{10 + i % 30, 5.0 + i % 20 * 0.1};
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            double[][] values = predictor.predict(conditions, times, executor);
+            assertEquals(conditions.length, values.length);
+            for (int i = 0; i < conditions.length; i++) {
+                assertArrayEquals(predictor.predict(conditions[i], times), values[i], 0.0);
+                assertEquals(predict(conditions[i][0], conditions[i][1], times[7]), values[i][7], 1e-12);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingCondition() {
+        new TertiaryModelPredictor(createModel()).predict(new double[]{20}, new double[]{1});
+    }
+
+    @Test
+    public void testWithoutConditions() {
+        SBMLDocument secDoc = createDocument("mu_max", "0.5 * b", "mu_max", 0.0);
+        addParameter(secDoc.getModel(), "b", true, 0.2);
+
+        // The coefficient has another id than the variable of the secondary model
+        SBMLDocument tertDoc = createDocument("species", "LOG10N0 + mu * Time", PrimaryModelPredictor.TIME, 0.0);
+        addParameter(tertDoc.getModel(), "LOG10N0", true, 3.0);
+        addParameter(tertDoc.getModel(), "mu", true, 1.0);
+        link(tertDoc, "mu", "muMax.sbml", "mu_max");
+
+        TertiaryModelPredictor predictor = new TertiaryModelPredictor(tertDoc,
+                Collections.singletonList("muMax.sbml"), Collections.singletonList(secDoc));
+        assertTrue(predictor.getConditions().isEmpty());
+        assertEquals(Collections.singletonList("mu"), predictor.getSecondaryVariables());
+        assertEquals(3.0 + 0.1 * 10, predictor.predict(new double[0], new double[]{10})[0], 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnlinkedSecondaryModel() {
+        TwoStepTertiaryModel model = createModel();
+        // Only mu_max is replaced, so the lambda model would be ignored
+        SBMLDocument tertDoc = createDocument("species", "LOG10N0 + max(0, mu_max * (Time-lambda))",
+                PrimaryModelPredictor.TIME, 0.0);
+        addParameter(tertDoc.getModel(), "LOG10N0", true, 3.0);
+        addParameter(tertDoc.getModel(), "mu_max", true, 1.0);
+        addParameter(tertDoc.getModel(), "lambda", true, 0.0);
+        link(tertDoc, "mu_max", "muMax.sbml", "mu_max");
+        addSubmodel(tertDoc, "lambda.sbml");
+
+        new TertiaryModelPredictor(tertDoc, model.getSecDocNames(), model.getSecDocs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingSecondaryModel() {
+        TwoStepTertiaryModel model = createModel();
+        new TertiaryModelPredictor(model.getTertDoc(), model.getSecDocNames().subList(0, 1),
+                model.getSecDocs().subList(0, 1));
+    }
+
+    /**
+     * Creates a tertiary model of a linear growth model with a lag. The growth rate is given by a square root model of
+     * temperature and pH, and the lag by a model of temperature.
+     */
+    static TwoStepTertiaryModel createModel() {
+        SBMLDocument muMaxDoc = createDocument("mu_max", "(b*(Temperature-Tmin))^2 * (pH-pHmin)", "Temperature", 0.0);
+        addParameter(muMaxDoc.getModel(), "pH", false, 0.0);
+        addParameter(muMaxDoc.getModel(), "b", true, 0.03);
+        addParameter(muMaxDoc.getModel(), "Tmin", true, 4.0);
+        addParameter(muMaxDoc.getModel(), "pHmin", true, 4.5);
+
+        SBMLDocument lambdaDoc = createDocument("lambda", "a / (Temperature-Tmin)", "Temperature", 0.0);
+        addParameter(lambdaDoc.getModel(), "a", true, 60.0);
+        addParameter(lambdaDoc.getModel(), "Tmin", true, 2.0);
+
+        List<String> secDocNames = Arrays.asList("muMax.sbml", "lambda.sbml");
+        List<SBMLDocument> secDocs = Arrays.asList(muMaxDoc, lambdaDoc);
+        return new TwoStepTertiaryModel("tertiary.sbml", createTertiaryDocument(),
+                Collections.<PrimaryModelWData>emptyList(), secDocNames, secDocs);
+    }
+
+    private static SBMLDocument createTertiaryDocument() {
+        SBMLDocument doc = createDocument("species", "LOG10N0 + max(0, mu_max * (Time-lambda))",
+                PrimaryModelPredictor.TIME, 0.0);
+        addParameter(doc.getModel(), "LOG10N0", true, 3.0);
+        // Replaced by the secondary models
+        addParameter(doc.getModel(), "mu_max", true, 1.0);
+        addParameter(doc.getModel(), "lambda", true, 0.0);
+        link(doc, "mu_max", "muMax.sbml", "mu_max");
+        link(doc, "lambda", "lambda.sbml", "lambda");
+        return doc;
+    }
+
+    /**
+     * Replaces a coefficient of a tertiary document by the variable of a secondary document.
+     */
+    private static void link(SBMLDocument tertDoc, String coefficient, String secDocName, String secVariable) {
+        CompSBasePlugin plugin =
+                (CompSBasePlugin) tertDoc.getModel().getParameter(coefficient).getPlugin(CompConstants.shortLabel);
+        ReplacedBy replacedBy = plugin.createReplacedBy();
+        replacedBy.setSubmodelRef(addSubmodel(tertDoc, secDocName));
+        replacedBy.setIdRef(secVariable);
+    }
+
+    /**
+     * Adds a submodel of a secondary document to a tertiary document and returns its id.
+     */
+    private static String addSubmodel(SBMLDocument tertDoc, String secDocName) {
+        String id = secDocName.replace(".sbml", "");
+        CompSBMLDocumentPlugin docPlugin = (CompSBMLDocumentPlugin) tertDoc.getPlugin(CompConstants.shortLabel);
+        docPlugin.createExternalModelDefinition(id).setSource(secDocName);
+
+        CompModelPlugin modelPlugin = (CompModelPlugin) tertDoc.getModel().getPlugin(CompConstants.shortLabel);
+        modelPlugin.createSubmodel("sub_" + id).setModelRef(id);
+        return "sub_" + id;
+    }
+
+    /**
+     * Creates a document with a rule and a non constant parameter.
+     */
+    private static SBMLDocument createDocument(String variable, String formula, String parameter, double value) {
+        SBMLDocument doc = new SBMLDocument(3, 1);
+        Model model = doc.createModel(variable);
+        addParameter(model, variable, false, 0.0);
+        if (!parameter.equals(variable)) {
+            addParameter(model, parameter, false, value);
+        }
+
+        ModelRule rule = new ModelRule(variable, formula, variable, ModelClass.GROWTH, 0, new Reference[0]);
+        model.addRule(rule.getRule());
+        return doc;
+    }
+
+    private static void addParameter(Model model, String id, boolean constant, double value) {
+        Parameter parameter = model.createParameter(id);
+        parameter.setConstant(constant);
+        parameter.setValue(value);
+    }
+
+    private static double predict(double temperature, double pH, double time) {
+        double muMax = Math.pow(0.03 * (temperature - 4.0), 2) * (pH - 4.5);
+        double lambda = 60.0 / (temperature - 2.0);
+        return 3.0 + Math.max(0, muMax * (time - lambda));
+    }
+}
@@ -30,6 +30,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class NuMLDocumentTest {
@@ -134,4 +135,21 @@ public class NuMLDocumentTest {
         }
     }
 
+    @Test
+    public void testCopy() {
+        NuMLDocument copy = new NuMLDocument(concOntology, timeOntology, resultComponent).copy();
+        assertEquals(concOntology, copy.getConcentrationOntologyTerm());
+        assertEquals(timeOntology, copy.getTimeOntologyTerm());
+        assertEquals(resultComponent, copy.getResultComponent());
+
+        // Changes to the copy do not reach the document. Only the immutable time series is shared
+        copy.getResultComponent().setCondID(2);
+        copy.getResultComponent().getReferences()[0].setYear(2000);
+        copy.getConcentrationOntologyTerm().getCompartment().setName("other");
+        assertEquals(Integer.valueOf(1), resultComponent.getCondID());
+        assertEquals(Integer.valueOf(1994), resultComponent.getReferences()[0].getYear());
+        assertEquals("culture broth, broth culture, culture medium", concOntology.getCompartment().getName());
+        assertSame(resultComponent.getTimeSeries(), copy.getResultComponent().getTimeSeries());
+    }
+
 }
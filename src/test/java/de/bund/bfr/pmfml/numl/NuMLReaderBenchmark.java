@@ -0,0 +1,78 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Compares the DOM and the StAX {@link NuMLReader} on documents of growing size. It is not run with the unit tests.
+ * Run it with the test classpath, e.g. <code>java -cp ... de.bund.bfr.pmfml.numl.NuMLReaderBenchmark</code>.
+ */
+public class NuMLReaderBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("tuples\tdom (ms)\tstax (ms)\tdom (MB allocated)\tstax (MB allocated)");
+
+        for (int numTuples : new int[]{100, 1_000, 10_000, 100_000}) {
+            byte[] bytes = NuMLReaderTest.toBytes(NuMLReaderTest.createDocument(numTuples));
+
+            for (int i = 0; i < WARMUP; i++) {
+                NuMLReader.read(new ByteArrayInputStream(bytes));
+                NuMLReader.readStreaming(new ByteArrayInputStream(bytes));
+            }
+
+            long domTime = 0;
+            long staxTime = 0;
+            long domMemory = 0;
+            long staxMemory = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long memory = allocatedBytes();
+                long start = System.nanoTime();
+                NuMLReader.read(new ByteArrayInputStream(bytes));
+                domTime += System.nanoTime() - start;
+                domMemory += allocatedBytes() - memory;
+
+                memory = allocatedBytes();
+                start = System.nanoTime();
+                NuMLReader.readStreaming(new ByteArrayInputStream(bytes));
+                staxTime += System.nanoTime() - start;
+                staxMemory += allocatedBytes() - memory;
+            }
+
+            System.out.println(String.format(Locale.ENGLISH, "%d\t%.2f\t%.2f\t%.2f\t%.2f", numTuples,
+                    domTime / 1e6 / ITERATIONS, staxTime / 1e6 / ITERATIONS,
+                    domMemory / 1e6 / ITERATIONS, staxMemory / 1e6 / ITERATIONS));
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or 0 if the JVM does not support it.
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
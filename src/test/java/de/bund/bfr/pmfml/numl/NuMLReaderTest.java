@@ -0,0 +1,106 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import de.bund.bfr.pmfml.ModelType;
+import de.bund.bfr.pmfml.sbml.*;
+import org.junit.Test;
+import org.sbml.jsbml.Unit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NuMLReaderTest {
+
+    /**
+     * Creates a NuML document with the given number of tuples.
+     */
+    public static NuMLDocument createDocument(final int numTuples) {
+        PMFUnit[] concUnits = new PMFUnit[]{new PMFUnit(1.0, 0, Unit.Kind.ITEM, 1.0),
+                new PMFUnit(1.0, 0, Unit.Kind.GRAM, 1.0)};
+        PMFUnitDefinition concUnitDef = new PMFUnitDefinition("log10_count_g", "log10(count/g)", "log10", concUnits);
+
+        String compartmentId = "culture_broth_broth_culture_culture_medium";
+        ModelVariable[] modelVariables = new ModelVariable[]{new ModelVariable("Temperature", 10.0),
+                new ModelVariable("pH", 5.63)};
+        PMFCompartment compartment = SBMLFactory.createPMFCompartment(compartmentId,
+                "culture broth, broth culture, culture medium", null, "broth", modelVariables);
+        PMFSpecies species = SBMLFactory.createPMFSpecies(compartmentId, "species4024", "salmonella spp",
+                concUnitDef.getId(), null, "Salmonella spec", null);
+        ConcentrationOntology concOntology = new ConcentrationOntology(concUnitDef, compartment, species);
+
+        PMFUnit[] hourUnits = new PMFUnit[]{new PMFUnit(3600, 0, Unit.Kind.SECOND, 1)};
+        TimeOntology timeOntology = new TimeOntology(new PMFUnitDefinition("h", "h", null, hourUnits));
+
+        Reference ref = SBMLFactory.createReference("Baranyi, J.", 1994,
+                "A dynamic approach to predicting microbial bacterial growth in food", null,
+                "International Journal of Food Microbiology", "23", "3", 277, null, null, ReferenceType.Paper,
+                null);
+
+        AtomicDescription concDesc = new AtomicDescription("concentration", "concentration");
+        AtomicDescription timeDesc = new AtomicDescription("Time", "time");
+
+        Tuple[] tuples = new Tuple[numTuples];
+        for (int i = 0; i < numTuples; i++) {
+            tuples[i] = new Tuple(new AtomicValue(2.67 + i * 0.01), new AtomicValue(i * 0.5));
+        }
+
+        ResultComponent resultComponent = new ResultComponent("exp1", 1, "salm25", "Jane", "Doe",
+                "jane.doe@people.com", null, null, ModelType.EXPERIMENTAL_DATA, "CC", null, new Reference[]{ref},
+                new TupleDescription(concDesc, timeDesc), tuples);
+
+        return new NuMLDocument(concOntology, timeOntology, resultComponent);
+    }
+
+    static byte[] toBytes(final NuMLDocument doc) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        NuMLWriter.write(doc, os);
+        return os.toByteArray();
+    }
+
+    @Test
+    public void testReadStreaming() throws Exception {
+        byte[] bytes = toBytes(createDocument(50));
+
+        NuMLDocument domDoc = NuMLReader.read(new ByteArrayInputStream(bytes));
+        NuMLDocument staxDoc = NuMLReader.readStreaming(new ByteArrayInputStream(bytes));
+
+        assertEquals(domDoc.getConcentrationOntologyTerm(), staxDoc.getConcentrationOntologyTerm());
+        assertEquals(domDoc.getTimeOntologyTerm(), staxDoc.getTimeOntologyTerm());
+
+        ResultComponent domComponent = domDoc.getResultComponent();
+        ResultComponent staxComponent = staxDoc.getResultComponent();
+        assertEquals(domComponent, staxComponent);
+
+        // ReferenceImpl does not implement equals
+        assertEquals(domComponent.getReferences().length, staxComponent.getReferences().length);
+        Reference domRef = domComponent.getReferences()[0];
+        Reference staxRef = staxComponent.getReferences()[0];
+        assertEquals(domRef.getAuthor(), staxRef.getAuthor());
+        assertEquals(domRef.getYear(), staxRef.getYear());
+        assertEquals(domRef.getTitle(), staxRef.getTitle());
+        assertEquals(domRef.getJournal(), staxRef.getJournal());
+        assertEquals(domRef.getPage(), staxRef.getPage());
+        assertEquals(domRef.getType(), staxRef.getType());
+
+        assertEquals(domComponent.getDimensionDescription(), staxComponent.getDimensionDescription());
+        assertArrayEquals(domComponent.getDimensions(), staxComponent.getDimensions());
+    }
+}
@@ -0,0 +1,64 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class NuMLWriterTest {
+
+    @Test
+    public void testWriteStreaming() throws Exception {
+        NuMLDocument doc = NuMLReaderTest.createDocument(50);
+
+        for (boolean indent : new boolean[]{true, false}) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            NuMLWriter.writeStreaming(doc, os, indent);
+            byte[] bytes = os.toByteArray();
+
+            // Read back with both readers
+            for (NuMLDocument readDoc : new NuMLDocument[]{NuMLReader.read(new ByteArrayInputStream(bytes)),
+                    NuMLReader.readStreaming(new ByteArrayInputStream(bytes))}) {
+                assertEquals(doc.getConcentrationOntologyTerm(), readDoc.getConcentrationOntologyTerm());
+                assertEquals(doc.getTimeOntologyTerm(), readDoc.getTimeOntologyTerm());
+                assertEquals(doc.getResultComponent(), readDoc.getResultComponent());
+                assertEquals(doc.getResultComponent().getDimensionDescription(),
+                        readDoc.getResultComponent().getDimensionDescription());
+                assertArrayEquals(doc.getResultComponent().getDimensions(),
+                        readDoc.getResultComponent().getDimensions());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteStreamingMatchesDom() throws Exception {
+        NuMLDocument doc = NuMLReaderTest.createDocument(10);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        NuMLWriter.writeStreaming(doc, os, true);
+
+        NuMLDocument domDoc = NuMLReader.read(new ByteArrayInputStream(NuMLReaderTest.toBytes(doc)));
+        NuMLDocument staxDoc = NuMLReader.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(domDoc.getResultComponent(), staxDoc.getResultComponent());
+        assertArrayEquals(domDoc.getResultComponent().getDimensions(), staxDoc.getResultComponent().getDimensions());
+    }
+}
@@ -228,6 +228,20 @@ public class ResultComponentTest {
 		assertArrayEquals(tuples, rc.getDimensions());
 	}
 
+	@Test
+	public void testTimeSeriesAccessors() {
+		ResultComponent rc = new ResultComponent("exp1", tupleDescription, tuples);
+		assertEquals(TimeSeries.fromTuples(tuples), rc.getTimeSeries());
+
+		TimeSeries timeSeries = new TimeSeries(new double[] { 0.0, 1.0 }, new double[] { 3.0, 4.0 });
+		rc.setTimeSeries(timeSeries);
+		assertEquals(timeSeries, rc.getTimeSeries());
+		assertArrayEquals(timeSeries.toTuples(), rc.getDimensions());
+
+		ResultComponent copy = new ResultComponent(rc.toNode(doc));
+		assertEquals(timeSeries, copy.getTimeSeries());
+	}
+
 	@Test
 	public void testNodes() {
 		ResultComponent rc = new ResultComponent(id, condId, combaseId, creatorGivenName, creatorFamilyName,
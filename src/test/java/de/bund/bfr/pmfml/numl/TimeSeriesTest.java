@@ -0,0 +1,82 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.numl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TimeSeriesTest {
+
+    private final double[] times = {0.0, 50.88, 73.02};
+    private final double[] concentrations = {2.67, 2.91, 2.87};
+
+    @Test
+    public void testGetters() {
+        TimeSeries series = new TimeSeries(times, concentrations);
+        assertEquals(3, series.size());
+        assertEquals(50.88, series.getTime(1), 0.0);
+        assertEquals(2.87, series.getConcentration(2), 0.0);
+        assertArrayEquals(times, series.getTimes(), 0.0);
+        assertArrayEquals(concentrations, series.getConcentrations(), 0.0);
+    }
+
+    @Test
+    public void testCopies() {
+        double[] times = this.times.clone();
+        TimeSeries series = new TimeSeries(times, concentrations);
+        Tuple[] tuples = series.toTuples();
+
+        // Neither the arrays passed nor the arrays returned change the series
+        times[1] = 1.0;
+        series.getTimes()[1] = 1.0;
+        series.getConcentrations()[1] = 1.0;
+        assertEquals(50.88, series.getTime(1), 0.0);
+        assertEquals(2.91, series.getConcentration(1), 0.0);
+        assertArrayEquals(tuples, series.toTuples());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentLengths() {
+        new TimeSeries(times, new double[]{1.0});
+    }
+
+    @Test
+    public void testTuples() {
+        TimeSeries series = new TimeSeries(times, concentrations);
+        Tuple[] tuples = series.toTuples();
+        assertEquals(new Tuple(new AtomicValue(2.91), new AtomicValue(50.88)), tuples[1]);
+        assertEquals(series, TimeSeries.fromTuples(tuples));
+
+        // Later calls share the tuples but not the array
+        Tuple[] otherTuples = series.toTuples();
+        assertNotSame(tuples, otherTuples);
+        assertSame(tuples[1], otherTuples[1]);
+    }
+
+    @Test
+    public void testEquals() {
+        TimeSeries series = new TimeSeries(times, concentrations);
+        assertEquals(series, new TimeSeries(times.clone(), concentrations.clone()));
+        assertEquals(series.hashCode(), new TimeSeries(times.clone(), concentrations.clone()).hashCode());
+        assertFalse(series.equals(new TimeSeries(concentrations, times)));
+    }
+}
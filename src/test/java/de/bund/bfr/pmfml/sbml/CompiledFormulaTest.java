@@ -0,0 +1,174 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.sbml;
+
+import de.bund.bfr.pmfml.ModelClass;
+import org.junit.Test;
+import org.sbml.jsbml.JSBML;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CompiledFormulaTest {
+
+    private static final double DELTA = 1e-12;
+
+    @Test
+    public void testModelRule() {
+        final ModelRule rule = new ModelRule("Value",
+                "LOG10Nres+log10((10^(LOG10N0-LOG10Nres)-1)*10^(-(Time/delta)^p)+1)", "Weibull model",
+                ModelClass.GROWTH, 0, new Reference[0]);
+        final PMFCoefficient[] coefficients = new PMFCoefficient[]{new PMFCoefficientImpl("LOG10N0", 6.0, "count"),
+                new PMFCoefficientImpl("delta", 12.5, "h"), new PMFCoefficientImpl("p", 1.3, "dimensionless")};
+        final ModelVariable[] variables = new ModelVariable[]{new ModelVariable("LOG10Nres", 1.5),
+                new ModelVariable("Temperature", null)};
+
+        final CompiledFormula formula = CompiledFormula.compile(rule, "Time", coefficients, variables);
+        assertEquals("Time", formula.getArgument());
+        assertFalse(formula.isConstant());
+
+        for (double time = 0; time <= 48; time += 0.5) {
+            final double expected = 1.5 + Math.log10((Math.pow(10, 6.0 - 1.5) - 1) *
+                    Math.pow(10, -Math.pow(time / 12.5, 1.3)) + 1);
+            assertEquals(expected, formula.applyAsDouble(time), DELTA);
+        }
+    }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        final Map<String, Double> bindings = new HashMap<>();
+        bindings.put("a", 2.0);
+        bindings.put("b", 3.0);
+
+        final CompiledFormula formula = CompiledFormula.compile(JSBML.parseFormula("exp(a*b-ln(b)) * x + a^b"), "x",
+                bindings);
+        // exp(a*b-ln(b)), x, *, a^b, +
+        assertEquals(5, formula.size());
+        assertEquals(Math.exp(6 - Math.log(3)) * 4 + 8, formula.applyAsDouble(4), DELTA);
+
+        final CompiledFormula constant = CompiledFormula.compile(JSBML.parseFormula("sqrt(a+b)"), "x", bindings);
+        assertTrue(constant.isConstant());
+        assertEquals(Math.sqrt(5), constant.applyAsDouble(1), DELTA);
+    }
+
+    @Test
+    public void testFunctions() throws Exception {
+        final Map<String, Double> bindings = Collections.emptyMap();
+        assertEquals(-8, evaluate("-x^3", 2, bindings), DELTA);
+        assertEquals(1.5, evaluate("abs(x) / 2", -3, bindings), DELTA);
+        assertEquals(2, evaluate("floor(x) + ceil(x - 1)", 1.5, bindings), DELTA);
+        assertEquals(Math.sin(1) + Math.cos(1) + Math.tan(1), evaluate("sin(x) + cos(x) + tan(x)", 1, bindings),
+                DELTA);
+        assertEquals(3, evaluate("max(1, x, 2) + min(x, 2, 5) - 2", 3, bindings), DELTA);
+        assertEquals(1, evaluate("x > 1 && x <= 2 || x == 5", 2, bindings), DELTA);
+        assertEquals(0, evaluate("x > 1 && x <= 2 || x == 5", 3, bindings), DELTA);
+        assertEquals(10, evaluate("piecewise(10, x < 1, 20, x < 2, 30)", 0.5, bindings), DELTA);
+        assertEquals(30, evaluate("piecewise(10, x < 1, 20, x < 2, 30)", 2.5, bindings), DELTA);
+        assertTrue(Double.isNaN(evaluate("piecewise(10, x < 1)", 2, bindings)));
+    }
+
+    @Test
+    public void testArrays() throws Exception {
+        final Map<String, Double> bindings = Collections.singletonMap("a", 2.0);
+        final String[] formulas = {"a", "-x^a + 1/x - ln(x) * log10(x) - exp(-x)", "sqrt(x) + abs(sin(x)) * cos(x)",
+                "tan(x) + floor(x) - ceil(x)", "max(x, 300) - min(x, a)",
+                "piecewise(x, x < 100 || x >= 700, -x, !(x == 400) && x != 500, 0)"};
+
+        final double[] x = new double[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i + 0.5;
+        }
+
+        for (final String text : formulas) {
+            final CompiledFormula formula = CompiledFormula.compile(JSBML.parseFormula(text), "x", bindings);
+            final double[] results = new double[x.length];
+            formula.applyAsDouble(x, results);
+            for (int i = 0; i < x.length; i++) {
+                assertEquals(text, formula.applyAsDouble(x[i]), results[i], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testArguments() throws Exception {
+        // Square root model of temperature and pH
+        final String[] arguments = {"T", "pH"};
+        final CompiledFormula formula = CompiledFormula.compile(JSBML.parseFormula("(b*(T-Tmin))^2 * (pH-pHmin)"),
+                arguments, createBindings());
+        assertArrayEquals(arguments, formula.getArguments());
+        assertEquals(Math.pow(0.03 * 16, 2) * 2.5, formula.evaluate(new double[]{20, 6.5}), DELTA);
+
+        final double[] temperatures = {5, 10, 15};
+        final double[] results = new double[temperatures.length];
+        formula.evaluate(temperatures, new double[]{Double.NaN, 6.5}, results);
+        for (int i = 0; i < temperatures.length; i++) {
+            assertEquals(formula.evaluate(new double[]{temperatures[i], 6.5}), results[i], 0.0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSingleArgument() throws Exception {
+        CompiledFormula.compile(JSBML.parseFormula("T * pH"), new String[]{"T", "pH"},
+                Collections.<String, Double>emptyMap()).applyAsDouble(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnboundName() throws Exception {
+        CompiledFormula.compile(JSBML.parseFormula("a * x"), "x", Collections.<String, Double>emptyMap());
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        final CompiledFormula formula = CompiledFormula.compile(JSBML.parseFormula("x^2 + 1"), "x",
+                Collections.<String, Double>emptyMap());
+
+        final double[] results = new double[1000];
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = offset; i < results.length; i += threads.length) {
+                    results[i] = formula.applyAsDouble(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(i * i + 1, results[i], DELTA);
+        }
+    }
+
+    private static double evaluate(final String formula, final double x, final Map<String, Double> bindings)
+            throws Exception {
+        return CompiledFormula.compile(JSBML.parseFormula(formula), "x", bindings).applyAsDouble(x);
+    }
+
+    private static Map<String, Double> createBindings() {
+        final Map<String, Double> bindings = new HashMap<>();
+        bindings.put("b", 0.03);
+        bindings.put("Tmin", 4.0);
+        bindings.put("pHmin", 4.0);
+        return bindings;
+    }
+}
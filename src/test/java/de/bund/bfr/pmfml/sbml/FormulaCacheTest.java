@@ -0,0 +1,118 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.sbml;
+
+import de.bund.bfr.pmfml.ModelClass;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.text.parser.ParseException;
+
+import static org.junit.Assert.*;
+
+public class FormulaCacheTest {
+
+    private static final String BARANYI = "LOG10Nres+log10((10^(LOG10N0-LOG10Nres)-1)*10^(-(Time/delta)^p)+1)";
+
+    private FormulaCache previous;
+
+    @Before
+    public void setUp() {
+        previous = FormulaCache.getShared();
+    }
+
+    @After
+    public void tearDown() {
+        FormulaCache.setShared(previous);
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        FormulaCache cache = new FormulaCache(10);
+
+        ASTNode first = cache.parse(BARANYI);
+        ASTNode second = cache.parse(BARANYI);
+        ASTNode third = cache.parse(BARANYI);
+        assertEquals(1, cache.getNumFormulas());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        // Every caller gets its own tree
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+        assertEquals(first.toFormula(), second.toFormula());
+        assertEquals(first.toFormula(), third.toFormula());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        FormulaCache cache = new FormulaCache(2);
+        cache.parse("a + b");
+        cache.parse("a * b");
+        cache.parse("a + b");
+        cache.parse("a - b");
+
+        // "a * b" is the least recently used
+        assertEquals(2, cache.getNumFormulas());
+        assertEquals(1, cache.getEvictions());
+        cache.parse("a + b");
+        assertEquals(2, cache.getHits());
+        cache.parse("a * b");
+        assertEquals(4, cache.getMisses());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getNumFormulas());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testParseError() {
+        FormulaCache cache = new FormulaCache(2);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse("a + (b");
+                fail();
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+        assertEquals(0, cache.getNumFormulas());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new FormulaCache(0);
+    }
+
+    @Test
+    public void testModelRule() {
+        FormulaCache cache = new FormulaCache(10);
+        FormulaCache.setShared(cache);
+
+        ModelRule first = new ModelRule("Value", BARANYI, "Baranyi model", ModelClass.GROWTH, 0, new Reference[0]);
+        ModelRule second = new ModelRule("Value", BARANYI, "Baranyi model", ModelClass.GROWTH, 0, new Reference[0]);
+        assertEquals(1, cache.getHits());
+        assertNotSame(first.getRule().getMath(), second.getRule().getMath());
+        assertEquals(first.getFormula(), second.getFormula());
+
+        FormulaCache.setShared(null);
+        new ModelRule("Value", BARANYI, "Baranyi model", ModelClass.GROWTH, 0, new Reference[0]);
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -0,0 +1,96 @@
+/***************************************************************************************************
+ * Copyright (c) 2015 Federal Institute for Risk Assessment (BfR), Germany
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ *
+ * Contributors: Department Biological Safety - BfR
+ **************************************************************************************************/
+package de.bund.bfr.pmfml.sbml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LimitsCheckerTest {
+
+    private static final String[] VARIABLES = {"Temperature", "pH", "aw", "Time"};
+
+    private static final Limits[] LIMITS = {new Limits("Temperature", 4.0, 30.0), new Limits("pH", 4.5, null),
+            new Limits("aw", null, 0.99), new Limits("mu_max", 0.0, 5.0)};
+
+    @Test
+    public void testCheck() {
+        LimitsChecker checker = new LimitsChecker(VARIABLES, LIMITS);
+
+        // The limit of mu_max is not of a variable
+        assertEquals(3, checker.getLimits().length);
+        assertEquals(0b111, checker.getAllMask());
+
+        assertEquals(0, checker.check(new double[]{20, 6.0, 0.95, 10}));
+        assertTrue(checker.isValid(new double[]{4, 4.5, 0.99, 10}));
+        assertEquals(0b001, checker.check(new double[]{35, 6.0, 0.95, 10}));
+        assertEquals(0b110, checker.check(new double[]{20, 4.0, 1.0, 10}));
+        assertEquals(0b100, checker.check(new double[]{20, 6.0, Double.NaN, 10}));
+    }
+
+    @Test
+    public void testConstraints() {
+        LimitsConstraint[] constraints = {new LimitsConstraint("Temperature", 4.0, 30.0),
+                new LimitsConstraint("pH", 4.5, null)};
+        LimitsChecker checker = new LimitsChecker(VARIABLES, constraints);
+        assertEquals(2, checker.getLimits().length);
+        assertEquals(0b10, checker.check(new double[]{20, 4.0, 0.95, 10}));
+    }
+
+    @Test
+    public void testBulk() {
+        LimitsChecker checker = new LimitsChecker(VARIABLES, LIMITS);
+
+        int numVectors = 1000;
+        double[][] vectors = new double[numVectors][];
+        double[] values = new double[numVectors * VARIABLES.length];
+        for (int v = 0; v < numVectors; v++) {
+            vectors[v] = new double[]{v % 40, 4.0 + v % 7 * 0.25, 0.9 + v % 11 * 0.01, v};
+            System.arraycopy(vectors[v], 0, values, v * VARIABLES.length, VARIABLES.length);
+        }
+
+        long[] masks = new long[numVectors];
+        long[] flatMasks = new long[numVectors];
+        int numValid = checker.check(vectors, masks);
+        assertEquals(numValid, checker.check(values, VARIABLES.length, flatMasks));
+        assertArrayEquals(masks, flatMasks);
+
+        int expected = 0;
+        for (int v = 0; v < numVectors; v++) {
+            assertEquals(checker.check(vectors[v]), masks[v]);
+            if (masks[v] == 0) {
+                expected++;
+            }
+        }
+        assertEquals(expected, numValid);
+        assertTrue(numValid > 0 && numValid < numVectors);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDimension() {
+        new LimitsChecker(VARIABLES, LIMITS).check(new double[10], 3, new long[10]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyLimits() {
+        Limits[] limits = new Limits[LimitsChecker.MAX_LIMITS + 1];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = new Limits("Temperature", (double) i, null);
+        }
+        new LimitsChecker(VARIABLES, limits);
+    }
+}